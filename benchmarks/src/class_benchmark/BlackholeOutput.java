@@ -0,0 +1,26 @@
+package class_benchmark;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import class_runtime.OutputSink;
+
+/**
+ * An OutputSink that hands every line to JMH, so that writes are neither
+ * printed nor optimized away.
+ */
+final class BlackholeOutput implements OutputSink {
+	private final Blackhole blackhole;
+
+	BlackholeOutput(Blackhole blackhole) {
+		this.blackhole = blackhole;
+	}
+
+	@Override
+	public void println(String line) {
+		blackhole.consume(line);
+	}
+
+	@Override
+	public void flush() {
+	}
+}
@@ -0,0 +1,62 @@
+package class_benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import class_helper.JiffyError;
+import class_interpreter.CompiledProgram;
+import class_interpreter.Interpreter;
+import class_runtime.ListInput;
+
+/**
+ * Runs of the class_resources programs, with their input given as a list and
+ * their output handed to JMH instead of being printed. interpret does what
+ * Interpreter.interpret does, parsing and compiling the program every time;
+ * execute only runs a program that was compiled once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+	@Param({ "prime.jif", "gcd_test.jif", "seq_sum_test.jif", "square_root_test.jif" })
+	public String program;
+
+	private String text;
+	private List<Integer> input;
+	private CompiledProgram compiled;
+
+	@Setup
+	public void setup() throws JiffyError {
+		text = Programs.read(program);
+		// prime.jif reads the range to search; the other programs read nothing
+		input = Arrays.asList(1, 1000);
+		compiled = Interpreter.compile(text);
+	}
+
+	@Benchmark
+	public void interpret(Blackhole blackhole) throws JiffyError {
+		Interpreter.compile(text).execute(new ListInput(input), new BlackholeOutput(blackhole));
+	}
+
+	@Benchmark
+	public void execute(Blackhole blackhole) throws JiffyError {
+		compiled.execute(new ListInput(input), new BlackholeOutput(blackhole));
+	}
+}
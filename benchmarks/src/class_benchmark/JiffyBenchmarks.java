@@ -0,0 +1,33 @@
+package class_benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, e.g. a regular
+ * expression to pick the benchmarks. The GC profiler is always on, so every
+ * result comes with the bytes allocated per operation.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ */
+public class JiffyBenchmarks {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+				|| commandLine.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		boolean gc = false;
+		for (ProfilerConfig profiler : commandLine.getProfilers())
+			gc |= profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName());
+		if (!gc)
+			options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,50 @@
+package class_benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import class_helper.JiffyError;
+import class_parser.JiffyLexer;
+
+/**
+ * Tokenization throughput of JiffyLexer, in KB of program text per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+	private static final int KILOBYTES = 64;
+
+	private String text;
+
+	@Setup
+	public void setup() {
+		text = Programs.corpus(KILOBYTES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KILOBYTES)
+	public int tokenize() throws JiffyError {
+		JiffyLexer lexer = new JiffyLexer(text, false);
+		int tokens = 0;
+		while (lexer.nextToken() != JiffyLexer.EOLN_TOKEN) {
+			lexer.advance();
+			tokens++;
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,62 @@
+package class_benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import class_helper.ParseTree;
+import class_parser.JiffyParser;
+
+/**
+ * Parse time of JiffyParser and print time of ParseTree.toString, in
+ * microseconds per KB of program text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	private static final int KILOBYTES = 64;
+
+	private String text;
+	private ParseTree ast;
+
+	@Setup
+	public void setup() {
+		text = Programs.corpus(KILOBYTES);
+		JiffyParser jp = new JiffyParser(text, false);
+		if (jp.getErrorMessage() != null)
+			throw new IllegalStateException(jp.getErrorMessage());
+		ast = jp.getAST();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KILOBYTES)
+	public ParseTree parse() {
+		return new JiffyParser(text, false).getAST();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KILOBYTES)
+	public ParseTree parseParallel() {
+		return JiffyParser.parseParallel(text).getAST();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KILOBYTES)
+	public String treeToString() {
+		return ast.toString();
+	}
+}
@@ -0,0 +1,49 @@
+package class_benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Jiffy programs that the benchmarks run. They are the programs of
+ * class_resources, which the build packs into the benchmark jar.
+ */
+final class Programs {
+	static final String[] NAMES = { "prime.jif", "gcd_test.jif", "seq_sum_test.jif", "square_root_test.jif" };
+
+	private Programs() {
+	}
+
+	/**
+	 * Get the text of a program of class_resources.
+	 */
+	static String read(String name) {
+		try (InputStream in = Programs.class.getResourceAsStream("/class_resources/" + name)) {
+			if (in == null)
+				throw new IllegalArgumentException("No program " + name);
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Make a program of exactly the given number of KB, by repeating the
+	 * benchmarked programs and padding the end with blanks. Function names are
+	 * repeated too, which the lexer and the parser do not mind.
+	 */
+	static String corpus(int kilobytes) {
+		int length = kilobytes * 1024;
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0;; i = (i + 1) % NAMES.length) {
+			String program = read(NAMES[i]) + "\n";
+			if (text.length() + program.length() > length)
+				break;
+			text.append(program);
+		}
+		while (text.length() < length)
+			text.append(text.length() % 64 == 63 ? '\n' : ' ');
+		return text.toString();
+	}
+}
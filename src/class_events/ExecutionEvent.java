@@ -0,0 +1,25 @@
+package class_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A compiled program was run from main to the end.
+ */
+@Name("jiffy.Execution")
+@Label("Execution")
+@Category("Jiffy")
+@Description("Running a whole program")
+public class ExecutionEvent extends JiffyEvent {
+	@Label("Tokens")
+	public long tokenCount;
+
+	@Label("Nodes")
+	public long nodeCount;
+
+	@Label("Error")
+	@Description("The runtime error, if the program failed")
+	public String error;
+}
@@ -0,0 +1,19 @@
+package class_events;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * The fields that every Jiffy Flight Recorder event has. The events are
+ * committed by the phases they time, so that Jiffy work shows in JFR
+ * recordings next to GC and CPU activity.
+ */
+public abstract class JiffyEvent extends Event {
+	@Label("Program")
+	public String programName;
+
+	@Label("Source Size")
+	@DataAmount(DataAmount.BYTES)
+	public long sourceSize;
+}
@@ -0,0 +1,25 @@
+package class_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A program was tokenized. The lexer runs as the parser asks for tokens, so
+ * the event lasts as long as the parse; scanTime is the part of it spent
+ * scanning.
+ */
+@Name("jiffy.Lex")
+@Label("Lexing")
+@Category("Jiffy")
+@Description("Tokenizing a program")
+public class LexEvent extends JiffyEvent {
+	@Label("Tokens")
+	public long tokenCount;
+
+	@Label("Scan Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long scanTime;
+}
@@ -0,0 +1,28 @@
+package class_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A program, or a chunk of its declarations, was parsed.
+ */
+@Name("jiffy.Parse")
+@Label("Parsing")
+@Category("Jiffy")
+@Description("Parsing a program into its parse tree")
+public class ParseEvent extends JiffyEvent {
+	@Label("Tokens")
+	public long tokenCount;
+
+	@Label("Nodes")
+	public long nodeCount;
+
+	@Label("Functions")
+	public int functionCount;
+
+	@Label("Error")
+	@Description("The syntax error, if the program has one")
+	public String error;
+}
@@ -0,0 +1,19 @@
+package class_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A program file was read, or loaded from its AstCache file.
+ */
+@Name("jiffy.ProgramLoad")
+@Label("Program Load")
+@Category("Jiffy")
+@Description("Reading a program file, or loading its cached parse tree")
+public class ProgramLoadEvent extends JiffyEvent {
+	@Label("Cached")
+	@Description("Whether the parse tree came from the AstCache file")
+	public boolean cached;
+}
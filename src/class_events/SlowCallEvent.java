@@ -0,0 +1,25 @@
+package class_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A call of a Jiffy function took longer than the threshold, 10 ms unless the
+ * recording sets another. A call that a function makes in tail position runs
+ * in the caller's place, so it is part of the caller's event.
+ */
+@Name("jiffy.SlowCall")
+@Label("Slow Function Call")
+@Category("Jiffy")
+@Description("A Jiffy function call that took longer than the threshold")
+@Threshold("10 ms")
+public class SlowCallEvent extends JiffyEvent {
+	@Label("Function")
+	public String function;
+
+	@Label("Arguments")
+	public int argumentCount;
+}
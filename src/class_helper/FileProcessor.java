@@ -1,31 +1,64 @@
 package class_helper;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.FileReader;
+import java.io.Reader;
+
+import class_events.ProgramLoadEvent;
 
 public class FileProcessor {
+	/**
+	 * Read a whole program file into a String. Large programs are better read
+	 * through openProgramFile, which lets the parser stream the text.
+	 */
 	public static String readProgramFile(String filename) throws Exception {
-		if (isJif(filename)) {
-			File infile = new File("class_resources/" + filename);
-			String programText = "";
-			Scanner fileScan = null;
-			try {
-				fileScan = new Scanner(infile);
-			} catch (FileNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			while (fileScan.hasNext())
-				programText += fileScan.nextLine() + "\n";
-			return programText;
-		} else 
+		ProgramLoadEvent event = new ProgramLoadEvent();
+		event.begin();
+		StringBuilder programText = new StringBuilder();
+		try (Reader in = openProgramFile(filename)) {
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				programText.append(buffer, 0, n);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.programName = new File(filename).getName();
+			event.sourceSize = programText.length();
+			event.commit();
+		}
+		return programText.toString();
+	}
+
+	/**
+	 * Open a program file. A name is looked up in class_resources first, like
+	 * the sample programs, and otherwise used as a path of its own.
+	 * 
+	 * @param filename the name or path of a .jif file
+	 * @return a buffered Reader of the program text
+	 */
+	public static Reader openProgramFile(String filename) throws Exception {
+		return new BufferedReader(new FileReader(findProgramFile(filename)));
+	}
+
+	/**
+	 * Find a program file, the way openProgramFile does.
+	 */
+	public static File findProgramFile(String filename) throws Exception {
+		if (!isJif(filename))
 			throw new Exception("Jiffy files must have extension .jif");
+
+		File infile = new File("class_resources", filename);
+		if (!infile.isFile())
+			infile = new File(filename);
+		if (!infile.isFile())
+			throw new FileNotFoundException(filename);
+		return infile;
 	}
 
 	private static boolean isJif(String filename) {
-		int dot = filename.indexOf('.');
-		String ext = filename.substring(dot + 1);
-		return ext.equals("jif");
+		return filename.endsWith(".jif");
 	}
 }
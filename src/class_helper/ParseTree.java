@@ -1,5 +1,5 @@
 package class_helper;
-import java.util.ArrayList;
+import java.util.List;
 
 public class ParseTree {
 	private TreeNode root = null;
@@ -13,54 +13,45 @@ public class ParseTree {
 	}
 
 	public String toString() {
-		if (root != null)
-			return pretty_print(root, 0);
-		else
+		if (root != null) {
+			StringBuilder sb = new StringBuilder();
+			pretty_print(root, 0, sb);
+			return sb.toString();
+		} else
 			return "No tree";
 	}
 
-	private String pretty_print(TreeNode current_node, int offset) {
+	private void pretty_print(TreeNode current_node, int offset, StringBuilder sb) {
 		int spacer = 5;
-		String print_string = "";
 
 		if (current_node.isLeaf()) { // base case
-			String indent = makeString(offset, " ");
-			String dots = current_node.isLeaf() ? "" : makeString(spacer, ".");
-
-			print_string += "\n" + indent + current_node.getSymbol() + dots;
-			return print_string;
+			sb.append('\n');
+			makeString(offset, ' ', sb);
+			sb.append(current_node.getSymbol());
 		} else {
-			ArrayList<TreeNode> c = current_node.getChildren();
+			List<TreeNode> c = current_node.getChildren();
 			int i = c.size() - 1;
 			while (i >= 0) {
 				TreeNode tn = c.get(i); // start with the rightmost child
 				if (tn != null)
-					print_string += pretty_print(tn, offset + spacer + current_node.getSymbol().length() - 1);
+					pretty_print(tn, offset + spacer + current_node.getSymbol().length() - 1, sb);
 
 				if (i == c.size() / 2) { // roughly midway through children, add parent node
-					String indent = makeString(offset, " ");
-					String dots = current_node.isLeaf() ? "" : makeString(spacer, ".");
-
-					print_string += "\n" + indent + current_node.getSymbol() + dots;
+					sb.append('\n');
+					makeString(offset, ' ', sb);
+					sb.append(current_node.getSymbol());
+					makeString(spacer - 1, '.', sb);
+					sb.append('|');
 				}
 				i = i - 1; // next child
 
 			}
-			return print_string;
 		}
 	}
 
-	private String makeString(int length, String s) {
-		String result = "";
-
-		for (int i = 0; i < length; i++) {
-			if (s == "." && i == length - 1)
-				result += "|";
-			else
-				result += s;
-		}
-
-		return result;
+	private void makeString(int length, char c, StringBuilder sb) {
+		for (int i = 0; i < length; i++)
+			sb.append(c);
 	}
 
 }
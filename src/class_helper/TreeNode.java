@@ -1,32 +1,175 @@
 package class_helper;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import class_runtime.NoneValue;
+import class_runtime.NumberValue;
+import class_runtime.StringValue;
+import class_runtime.Value;
 
 public class TreeNode {
+	/**
+	 * Node kinds. The parser gives every node its kind, so that consumers can
+	 * switch on an int instead of comparing symbols. The symbol is kept for
+	 * printing and for error messages.
+	 */
+	public static final int PROGRAM = 0;
+	public static final int FUNCTION = 1; // fun name(), parameters then block as children
+	public static final int BLOCK = 2;
+	public static final int STATEMENT_LIST = 3;
+	public static final int ASSIGN = 4;
+	public static final int WRITE = 5;
+	public static final int READ = 6;
+	public static final int WHILE = 7;
+	public static final int IF = 8;
+	public static final int RETURN = 9;
+	public static final int CALL = 10; // name(), arguments as children
+	public static final int IDENTIFIER = 11;
+	public static final int NUMBER = 12;
+	public static final int STRING = 13;
+	public static final int OPERATOR = 14; // + - * / ^ $ %
+	public static final int COMPARISON = 15; // < > ?
+
 	private String symbol;
-	private ArrayList<TreeNode> children;
+	private int kind;
+	private String name; // function name of FUNCTION and CALL nodes, otherwise the symbol
+	private Value value; // value of NUMBER and STRING nodes
+	private List<TreeNode> children;
+	private int slot = -1;
+	private int frameSize = 0;
+	private boolean tailCall = false;
+	private int line = 0;
+	private boolean frozen = false; // linked for execution, see freeze
 	
-	public TreeNode(String symbol, TreeNode left, TreeNode right) {
+	public TreeNode(int kind, String symbol, TreeNode left, TreeNode right) {
 		children = new ArrayList<TreeNode>();
 		this.symbol = symbol;
+		this.kind = kind;
 		if (left != null) {
 			children.add(left);
 		}
 		if (right != null) {
 			children.add(right);
 		}
+
+		name = symbol;
+		if (kind == FUNCTION)
+			name = symbol.substring(symbol.indexOf(' ') + 1, symbol.indexOf('('));
+		else if (kind == CALL)
+			name = symbol.substring(0, symbol.indexOf('('));
+		else if (kind == NUMBER)
+			value = Value.fromText(symbol);
+		else if (kind == STRING) // the parser returns "None" from functions without a return
+			value = symbol.equals("\"None\"") ? NoneValue.NONE : new StringValue(symbol.substring(1, symbol.length() - 1));
+	}
+
+	public TreeNode(int kind, String symbol) {
+		this(kind, symbol, null, null);
+	}
+
+	public TreeNode(String symbol, TreeNode left, TreeNode right) {
+		this(kindOf(symbol), symbol, left, right);
+	}
+
+	public TreeNode(String symbol) {
+		this(symbol, null, null);
+	}
+
+	/**
+	 * Guess the kind of a node from its symbol, for nodes not made by the parser.
+	 * A variable named like a statement (block, program, ...) is taken for the
+	 * statement, so the parser passes kinds explicitly.
+	 */
+	public static int kindOf(String symbol) {
+		switch (symbol) {
+		case "program":
+			return PROGRAM;
+		case "block":
+			return BLOCK;
+		case "stmnt_list":
+			return STATEMENT_LIST;
+		case "=":
+			return ASSIGN;
+		case "write":
+			return WRITE;
+		case "read":
+			return READ;
+		case "while":
+			return WHILE;
+		case "if":
+			return IF;
+		case "return":
+			return RETURN;
+		case "<":
+		case ">":
+		case "?":
+			return COMPARISON;
+		case "+":
+		case "-":
+		case "*":
+		case "/":
+		case "^":
+		case "$":
+		case "%":
+			return OPERATOR;
+		}
+		if (symbol.startsWith("fun "))
+			return FUNCTION;
+		if (symbol.endsWith("()"))
+			return CALL;
+		if (symbol.charAt(0) == '"')
+			return STRING;
+		if (Character.isLetter(symbol.charAt(0)))
+			return IDENTIFIER;
+		return NUMBER;
 	}
 
-	public ArrayList<TreeNode> getChildren() {
-		//Returns all children of this node
+	public List<TreeNode> getChildren() {
+		//Returns all children of this node, read-only once the node is frozen
 		return children;
 	}
 
 	public void add(TreeNode t) {
+		checkNotFrozen();
 		children.add(t);
 	}
 
-	public TreeNode(String symbol) {
-		this(symbol, null, null);
+	/**
+	 * Make this node and the nodes below it read-only, so that a linked tree
+	 * can be shared by executions on any number of threads. Changing a frozen
+	 * node throws an IllegalStateException.
+	 */
+	public void freeze() {
+		if (frozen)
+			return;
+		frozen = true;
+		children = Collections.unmodifiableList(children);
+		for (TreeNode child : children) {
+			if (child != null)
+				child.freeze();
+		}
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException("A frozen TreeNode cannot be changed: " + symbol);
+	}
+
+	/**
+	 * Copy this node and the nodes below it, with their lines but without
+	 * what linking adds. The copy is not frozen.
+	 */
+	public TreeNode copy() {
+		TreeNode result = new TreeNode(kind, symbol);
+		result.line = line;
+		for (TreeNode child : children)
+			result.children.add(child == null ? null : child.copy());
+		return result;
 	}
 
 	public TreeNode getLeft() {
@@ -55,4 +198,97 @@ public class TreeNode {
 		return symbol;
 	}
 
+	public int getKind() {
+		return kind;
+	}
+
+	public String getName() {
+		// Function name of a declaration or call, without "fun " and "()"
+		return name;
+	}
+
+	public int getArity() {
+		// Number of parameters of a declaration or arguments of a call
+		return kind == FUNCTION ? children.size() - 1 : children.size();
+	}
+
+	public Value getValue() {
+		// Value of a numeric constant or string literal, parsed once
+		return value;
+	}
+
+	public char getOperator() {
+		return symbol.charAt(0);
+	}
+
+	public boolean isConstant() {
+		return kind == NUMBER || kind == STRING;
+	}
+
+	public int getSlot() {
+		// Index of this identifier in the activation record of its function,
+		// assigned at link time. -1 if the node is not a linked identifier
+		return slot;
+	}
+
+	public void setSlot(int slot) {
+		checkNotFrozen();
+		this.slot = slot;
+	}
+
+	public int getFrameSize() {
+		// For a function declaration, the number of slots its activation record needs
+		return frameSize;
+	}
+
+	public void setFrameSize(int frameSize) {
+		checkNotFrozen();
+		this.frameSize = frameSize;
+	}
+
+	public boolean isTailCall() {
+		// For a call, whether it is the expression of a return statement, so
+		// that its result is the caller's result. Marked at link time
+		return tailCall;
+	}
+
+	public void setTailCall(boolean tailCall) {
+		checkNotFrozen();
+		this.tailCall = tailCall;
+	}
+
+	public int getLine() {
+		// Source line of a statement or function declaration, 0 for other nodes
+		// and for statements the parser adds, such as the return at the end of
+		// every function
+		return line;
+	}
+
+	public void setLine(int line) {
+		checkNotFrozen();
+		this.line = line;
+	}
+
+	public int countNodes() {
+		// Number of nodes of the subtree under this node, this one included
+		int count = 1;
+		for (TreeNode child : children) {
+			if (child != null)
+				count += child.countNodes();
+		}
+		return count;
+	}
+
+	public void shiftLines(int delta) {
+		// Move this node and the nodes below it, e.g. after lines were inserted
+		// above the function they belong to
+		checkNotFrozen();
+		if (line > 0)
+			line += delta;
+		for (TreeNode child : children) {
+			if (child != null)
+				child.shiftLines(delta);
+		}
+	}
+
 }
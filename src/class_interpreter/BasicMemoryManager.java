@@ -1,22 +1,33 @@
 package class_interpreter;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 
+import class_runtime.Value;
+
+/**
+ * The simplest MemoryManager: every call allocates a new activation record
+ * and records are kept on an ArrayList used as a stack.
+ */
 public class BasicMemoryManager implements MemoryManager {
-	private HashMap<String, String> valueTable;
+	private ArrayList<Value[]> stack;
 
 	public BasicMemoryManager() {
-		valueTable = new HashMap<>();
+		stack = new ArrayList<>();
 	}
 
 	@Override
-	public HashMap<String, String> getActivationRecord(String funcName) {
-		return valueTable;
+	public Value[] getActivationRecord(int frameSize) {
+		Value[] record = new Value[frameSize];
+		stack.add(record);
+		return record;
 	}
 
 	@Override
-	public HashMap<String, String> restoreActivationRecord() {
-		return valueTable;
+	public Value[] restoreActivationRecord() {
+		stack.remove(stack.size() - 1);
+		if (stack.isEmpty())
+			return null;
+		return stack.get(stack.size() - 1);
 	}
 
 }
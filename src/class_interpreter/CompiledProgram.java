@@ -0,0 +1,156 @@
+package class_interpreter;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_jit.FunctionCode;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.LineInput;
+import class_runtime.MemoryOutput;
+import class_runtime.OutputSink;
+
+/**
+ * A CompiledProgram is a program that Interpreter.compile has parsed, checked,
+ * optimized and linked. It can be executed any number of times without being
+ * parsed again; every execution starts with fresh variables, profiles and memo
+ * caches, reads and writes only the streams it is given, and reports a failing
+ * program with a JiffyError.
+ * 
+ * A CompiledProgram does not change once it is made, so any number of threads
+ * can execute it at the same time; see ScriptExecutor. Its tree is a private
+ * copy of the parse tree, linked and then frozen, so neither the parser nor an
+ * execution can change it. The one thing its
+ * executions share is the JVM bytecode of hot functions (see FunctionCode),
+ * which is compiled once, by the first execution that needs it.
+ */
+public final class CompiledProgram {
+	private final Map<String, TreeNode> funcs;
+	private final Set<String> pureFunctions;
+	private final HashMap<TreeNode, FunctionCode> code = new HashMap<>();
+
+	// Where the program came from, for Flight Recorder events
+	private final String name;
+	private final long sourceSize;
+	private final long tokenCount;
+	private final long nodeCount;
+
+	CompiledProgram(Map<String, TreeNode> funcs, Set<String> pureFunctions, String name, long sourceSize,
+			long tokenCount, long nodeCount) {
+		this.funcs = Collections.unmodifiableMap(new HashMap<>(funcs));
+		for (TreeNode funcNode : funcs.values())
+			code.put(funcNode, new FunctionCode(funcNode));
+		this.pureFunctions = Collections.unmodifiableSet(pureFunctions);
+		this.name = name;
+		this.sourceSize = sourceSize;
+		this.tokenCount = tokenCount;
+		this.nodeCount = nodeCount;
+	}
+
+	/**
+	 * Execute the program.
+	 * 
+	 * @param input  the lines that read statements take their values from
+	 * @param output where write statements print to
+	 * @throws JiffyError if the program fails while it runs
+	 */
+	public void execute(Reader input, PrintStream output) throws JiffyError {
+		execute(new LineInput(input), BufferedOutput.to(output));
+	}
+
+	/**
+	 * Execute the program, reading from an InputSource and writing to an
+	 * OutputSink, which is flushed when the program ends.
+	 * 
+	 * @return the profile and memo caches of this execution
+	 */
+	public ExecutionResult execute(InputSource input, OutputSink output) throws JiffyError {
+		return execute(input, output, ResourceLimits.NONE);
+	}
+
+	/**
+	 * Execute the program within the given limits.
+	 * 
+	 * @throws ResourceLimitError if the program goes over one of the limits
+	 */
+	public ExecutionResult execute(InputSource input, OutputSink output, ResourceLimits limits)
+			throws JiffyError {
+		return Interpreter.execute(this, new StackMemoryManager(), input, output, limits);
+	}
+
+	/**
+	 * Execute the program on the given input text and return what it writes.
+	 */
+	public String execute(String input) throws JiffyError {
+		MemoryOutput output = new MemoryOutput();
+		execute(new LineInput(new StringReader(input)), output);
+		return output.getText();
+	}
+
+	public Set<String> getFunctionNames() {
+		return Collections.unmodifiableSet(funcs.keySet());
+	}
+
+	/**
+	 * The names of the functions without side effects, which executions may
+	 * memoize.
+	 */
+	public Set<String> getPureFunctions() {
+		return pureFunctions;
+	}
+
+	/**
+	 * The names of the functions that executions have compiled to JVM bytecode
+	 * so far.
+	 */
+	public Set<String> getCompiledFunctions() {
+		TreeSet<String> names = new TreeSet<>();
+		for (FunctionCode c : code.values()) {
+			if (c.getCode() != null)
+				names.add(c.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * The name of the program, its file name if it was parsed from a file.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * The number of nodes of the functions of the parse tree, before
+	 * optimization.
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * The linked functions, which are frozen (see TreeNode.freeze).
+	 */
+	Map<String, TreeNode> getFuncs() {
+		return funcs;
+	}
+
+	FunctionCode getCode(TreeNode funcNode) {
+		return code.get(funcNode);
+	}
+}
@@ -0,0 +1,305 @@
+package class_interpreter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import class_helper.TreeNode;
+
+/**
+ * ExecutionProfiler records where a program spends its time while Interpreter
+ * runs it with profiling on. For every function it counts the calls, the time
+ * spent in the function including and excluding the functions it calls, and
+ * the memory the function allocates itself; for every statement it counts how
+ * often it ran. Calls are also kept as a tree of call paths, for flame graphs.
+ *
+ * Times are wall-clock nanoseconds. Allocation is what the JVM counts for the
+ * running thread, so it includes the interpreter's own objects, and it is 0
+ * where the JVM does not count it.
+ */
+public class ExecutionProfiler {
+	// Lines shown in the report, hottest first
+	private static final int REPORT_LINES = 25;
+
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationCounter();
+
+	private final LinkedHashMap<TreeNode, FunctionStats> functions = new LinkedHashMap<>();
+	private final HashMap<TreeNode, StatementStats> statements = new HashMap<>();
+	private final CallPath root = new CallPath(null, null);
+
+	// The functions being run, innermost last. Frames are reused, so that the
+	// profiler allocates nothing while a function is timed
+	private Frame[] stack = new Frame[64];
+	private int depth = 0;
+
+	ExecutionProfiler() {
+		for (int i = 0; i < stack.length; i++)
+			stack[i] = new Frame();
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+			if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+				return counter;
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		return ALLOCATION == null ? 0 : ALLOCATION.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * A call of a function starts.
+	 */
+	void enter(TreeNode funcNode) {
+		FunctionStats function = functions.get(funcNode);
+		if (function == null) {
+			function = new FunctionStats(funcNode.getName(), funcNode.getLine());
+			functions.put(funcNode, function);
+		}
+		CallPath caller = depth == 0 ? root : stack[depth - 1].path;
+		CallPath path = caller.children.get(function);
+		if (path == null) {
+			path = new CallPath(caller, function);
+			caller.children.put(function, path);
+		}
+		if (depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth * 2);
+			for (int i = depth; i < stack.length; i++)
+				stack[i] = new Frame();
+		}
+
+		function.calls++;
+		function.active++;
+		Frame frame = stack[depth++];
+		frame.path = path;
+		frame.childNanos = 0;
+		frame.childBytes = 0;
+		frame.startBytes = allocatedBytes();
+		frame.start = System.nanoTime();
+	}
+
+	/**
+	 * The innermost call returns.
+	 */
+	void exit() {
+		long nanos = System.nanoTime();
+		long bytes = allocatedBytes();
+		Frame frame = stack[--depth];
+		nanos -= frame.start;
+		bytes -= frame.startBytes;
+
+		FunctionStats function = frame.path.function;
+		function.selfNanos += nanos - frame.childNanos;
+		function.selfBytes += bytes - frame.childBytes;
+		frame.path.selfNanos += nanos - frame.childNanos;
+		// A recursive call is part of the outermost call's time already
+		if (--function.active == 0)
+			function.inclusiveNanos += nanos;
+		if (depth > 0) {
+			stack[depth - 1].childNanos += nanos;
+			stack[depth - 1].childBytes += bytes;
+		}
+	}
+
+	/**
+	 * A statement of the innermost call runs.
+	 */
+	void countStatement(TreeNode statement) {
+		StatementStats stats = statements.get(statement);
+		if (stats == null) {
+			stats = new StatementStats(statement.getLine(), depth == 0 ? null : stack[depth - 1].path.function);
+			statements.put(statement, stats);
+		}
+		stats.hits++;
+	}
+
+	public Collection<FunctionStats> getFunctions() {
+		return functions.values();
+	}
+
+	/**
+	 * Get the statement hits by source line, hottest first. Statements the
+	 * parser added, such as the return at the end of every function, have no
+	 * line and are left out.
+	 */
+	public List<LineStats> getLines() {
+		LinkedHashMap<String, LineStats> lines = new LinkedHashMap<>();
+		for (StatementStats stats : statements.values()) {
+			if (stats.line <= 0)
+				continue;
+			String function = stats.function == null ? "" : stats.function.name;
+			String key = function + ":" + stats.line;
+			LineStats line = lines.get(key);
+			if (line == null) {
+				line = new LineStats(function, stats.line);
+				lines.put(key, line);
+			}
+			line.hits += stats.hits;
+		}
+		List<LineStats> result = new ArrayList<>(lines.values());
+		result.sort(Comparator.comparingLong(LineStats::getHits).reversed()
+				.thenComparingInt(LineStats::getLine));
+		return result;
+	}
+
+	/**
+	 * Make a table of the functions, slowest first, and of the lines that ran
+	 * most often.
+	 */
+	public String report() {
+		List<FunctionStats> byTime = new ArrayList<>(functions.values());
+		byTime.sort(Comparator.comparingLong(FunctionStats::getSelfNanos).reversed());
+
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%-20s %6s %10s %12s %12s %12s%n", "function", "line", "calls", "total ms",
+				"self ms", "self KB"));
+		for (FunctionStats f : byTime)
+			text.append(String.format("%-20s %6d %10d %12.3f %12.3f %12.1f%n", f.name, f.line, f.calls,
+					f.inclusiveNanos / 1e6, f.selfNanos / 1e6, f.selfBytes / 1024.0));
+
+		List<LineStats> lines = getLines();
+		text.append(String.format("%n%-20s %6s %10s%n", "function", "line", "hits"));
+		for (LineStats line : lines.subList(0, Math.min(lines.size(), REPORT_LINES)))
+			text.append(String.format("%-20s %6d %10d%n", line.function, line.line, line.hits));
+		return text.toString();
+	}
+
+	/**
+	 * Write the call paths in the collapsed stack format of flame graph tools
+	 * such as flamegraph.pl: one line per path, the function names from main
+	 * down separated by semicolons, then the nanoseconds spent in the last
+	 * function on that path.
+	 */
+	public String collapsedStacks() {
+		StringBuilder text = new StringBuilder();
+		ArrayList<CallPath> pending = new ArrayList<>(root.children.values());
+		while (!pending.isEmpty()) {
+			CallPath path = pending.remove(pending.size() - 1);
+			if (path.selfNanos > 0)
+				text.append(path.stack()).append(' ').append(path.selfNanos).append('\n');
+			pending.addAll(path.children.values());
+		}
+		return text.toString();
+	}
+
+	@Override
+	public String toString() {
+		return report();
+	}
+
+	/**
+	 * The profile of one function.
+	 */
+	public static final class FunctionStats {
+		private final String name;
+		private final int line;
+		private long calls;
+		private long inclusiveNanos;
+		private long selfNanos;
+		private long selfBytes;
+		private int active; // calls on the stack, so recursion is timed once
+
+		private FunctionStats(String name, int line) {
+			this.name = name;
+			this.line = line;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		public long getInclusiveNanos() {
+			return inclusiveNanos;
+		}
+
+		public long getSelfNanos() {
+			return selfNanos;
+		}
+
+		public long getSelfBytes() {
+			return selfBytes;
+		}
+	}
+
+	/**
+	 * How often the statements on one line of a function ran.
+	 */
+	public static final class LineStats {
+		private final String function;
+		private final int line;
+		private long hits;
+
+		private LineStats(String function, int line) {
+			this.function = function;
+			this.line = line;
+		}
+
+		public String getFunction() {
+			return function;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+	}
+
+	private static final class StatementStats {
+		final int line;
+		final FunctionStats function;
+		long hits;
+
+		StatementStats(int line, FunctionStats function) {
+			this.line = line;
+			this.function = function;
+		}
+	}
+
+	/**
+	 * A function reached by one path of calls from main.
+	 */
+	private static final class CallPath {
+		final CallPath caller;
+		final FunctionStats function;
+		final LinkedHashMap<FunctionStats, CallPath> children = new LinkedHashMap<>();
+		long selfNanos;
+
+		CallPath(CallPath caller, FunctionStats function) {
+			this.caller = caller;
+			this.function = function;
+		}
+
+		String stack() {
+			return caller.function == null ? function.name : caller.stack() + ";" + function.name;
+		}
+	}
+
+	private static final class Frame {
+		CallPath path;
+		long start;
+		long startBytes;
+		long childNanos;
+		long childBytes;
+	}
+}
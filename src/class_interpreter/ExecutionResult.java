@@ -0,0 +1,36 @@
+package class_interpreter;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import class_optimizer.MemoCache;
+
+/**
+ * What one execution of a program leaves besides its output: its profile and
+ * the memo caches of its pure functions. Each execution has its own, so
+ * programs run at the same time do not see each other's.
+ */
+public final class ExecutionResult {
+	private final ExecutionProfiler profile;
+	private final Collection<MemoCache> memoCaches;
+
+	ExecutionResult(ExecutionProfiler profile, Collection<MemoCache> memoCaches) {
+		this.profile = profile;
+		this.memoCaches = Collections.unmodifiableCollection(memoCaches);
+	}
+
+	/**
+	 * Get the profile of the execution, or null unless profiling was enabled.
+	 */
+	public ExecutionProfiler getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Get the memo caches of the execution, one per pure function. Empty unless
+	 * memoization was enabled.
+	 */
+	public Collection<MemoCache> getMemoCaches() {
+		return memoCaches;
+	}
+}
@@ -1,141 +1,413 @@
 //Interpreter - class version
 package class_interpreter;
 
-import java.util.ArrayList;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Scanner;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import class_events.ExecutionEvent;
+import class_events.SlowCallEvent;
+import class_helper.JiffyError;
 import class_helper.ParseTree;
 import class_helper.TreeNode;
+import class_jit.FunctionCode;
+import class_jit.FunctionProfile;
+import class_optimizer.MemoCache;
+import class_optimizer.Optimizer;
+import class_optimizer.PurityAnalyzer;
 import class_parser.JiffyParser;
-
+import class_runtime.Arithmetic;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.LineInput;
+import class_runtime.NoneValue;
+import class_runtime.OutputSink;
+import class_runtime.Value;
+
+/**
+ * Interpreter walks the parse tree of a program. Interpreter.compile makes a
+ * CompiledProgram, which can be executed by any number of threads at once:
+ * every execution gets an Interpreter object of its own that holds its
+ * activation records, input and output, profiles and memo caches, and shares
+ * only the linked tree, which is not changed while programs run.
+ */
 public class Interpreter {
-	private static MemoryManager memMgr;
-	
-	private static HashMap<String, String> valueTable;
-	private static HashMap<String, TreeNode> funcs;
-	private static Scanner sysin = new Scanner(System.in);
-
-	public static void interpret(String programText, MemoryManager m, boolean detail) {
+	// Settings for the next compilations and executions
+	private static volatile boolean jitEnabled = true;
+	private static volatile boolean optimize = true; // constant folding and partial evaluation
+	private static volatile boolean memoize = false; // opt-in memoization of pure functions
+	private static volatile int memoCapacity = MemoCache.DEFAULT_CAPACITY;
+	private static volatile boolean profiling = false; // opt-in ExecutionProfiler
+
+	private final MemoryManager memMgr;
+	private final Map<String, TreeNode> funcs;
+	private final InputSource sysin;
+	private final OutputSink sysout;
+	private Value[] activationRecord;
+
+	// Tiered execution: hot numeric functions are compiled to JVM bytecode,
+	// which the program keeps for its other executions. Calls are counted per
+	// execution, and only if the JIT is on; currentProfile is null otherwise
+	private final boolean jit;
+	private final HashMap<TreeNode, FunctionProfile> profiles = new HashMap<>();
+	private FunctionProfile currentProfile;
+
+	// A return statement sets returning and the result instead of throwing, and
+	// statement lists and loops stop while it is set. A return of a call in
+	// tail position leaves the callee and its arguments for evaluateFunction,
+	// which runs it in the caller's frame.
+	private boolean returning;
+	private Value returnValue;
+	private TreeNode tailCallee;
+	private Value[] tailCallArgs;
+
+	// One bounded cache per pure function, if memoization is enabled
+	private final HashMap<TreeNode, MemoCache> memoCaches = new HashMap<>();
+
+	// Null unless profiling is enabled, so that it costs one test otherwise
+	private final ExecutionProfiler profiler;
+
+	// Null unless the execution has resource limits
+	private final ResourceGovernor governor;
+
+	// Whether Flight Recorder records slow calls, checked once per execution
+	private final boolean slowCalls;
+	private final CompiledProgram program;
+
+	private Interpreter(CompiledProgram program, MemoryManager m, InputSource in, OutputSink out,
+			ResourceLimits limits) {
 		memMgr = m;
-		JiffyParser jp = new JiffyParser(programText, detail);
-		ParseTree pt = jp.getAST();
-		funcs = jp.getFuncs(); // HashMap of function names and corresponding TreeNode
+		funcs = program.getFuncs();
+		sysin = in;
+		sysout = out;
+		profiler = profiling ? new ExecutionProfiler() : null;
+		governor = limits.isUnlimited() ? null : new ResourceGovernor(limits);
+		slowCalls = new SlowCallEvent().isEnabled();
+		this.program = program;
+		// compiled code is neither profiled nor governed
+		jit = jitEnabled && profiler == null && governor == null;
+		if (memoize) {
+			for (String name : program.getPureFunctions())
+				memoCaches.put(funcs.get(name), new MemoCache(name, memoCapacity));
+		}
+	}
+
+	public static void setJitEnabled(boolean enabled) {
+		jitEnabled = enabled;
+	}
+
+	public static void setOptimize(boolean enabled) {
+		optimize = enabled;
+	}
+
+	public static void setMemoize(boolean enabled) {
+		memoize = enabled;
+	}
+
+	public static void setMemoCapacity(int capacity) {
+		memoCapacity = capacity;
+	}
+
+	/**
+	 * Profile the functions and statements of the next programs run. Profiled
+	 * programs are interpreted only, without the JIT.
+	 */
+	public static void setProfiling(boolean enabled) {
+		profiling = enabled;
+	}
+
+	public static ExecutionResult interpret(String programText, MemoryManager m, boolean detail) {
+		return interpret(new StringReader(programText), m, detail);
+	}
+
+	/**
+	 * Run a program read from a Reader, such as FileProcessor.openProgramFile.
+	 */
+	public static ExecutionResult interpret(Reader in, MemoryManager m, boolean detail) {
+		return interpret(new JiffyParser(in, detail), m, detail);
+	}
+
+	/**
+	 * Run a program that has been parsed already, e.g. by JiffyParser.parseFile.
+	 * 
+	 * @return the profile and memo caches of the run, also if the program
+	 *         failed, or null if it could not be compiled
+	 */
+	public static ExecutionResult interpret(JiffyParser jp, MemoryManager m, boolean detail) {
+		CompiledProgram program;
+		try {
+			program = compile(jp);
+		} catch (JiffyError e) {
+			System.err.println("\t" + e.getMessage());
+			return null;
+		}
 
 		if (detail)
-			System.out.println(pt);
+			System.out.println(jp.getAST());
 		System.out.println("------------INTERPRETER OUTPUT------------------");
 
-		// Program execution starts with the function main
-		// Get the node in the parse tree associated with main
-		TreeNode mainNode = funcs.get("main");
+		Interpreter interpreter = new Interpreter(program, m, LineInput.stdin(), BufferedOutput.stdout(),
+				ResourceLimits.NONE);
+		try {
+			interpreter.execute();
+		} catch (JiffyError e) {
+			System.out.println(e.getMessage());
+		}
+		return interpreter.getResult();
+	}
+
+	public static CompiledProgram compile(String programText) throws JiffyError {
+		return compile(new StringReader(programText));
+	}
+
+	public static CompiledProgram compile(Reader in) throws JiffyError {
+		return compile(new JiffyParser(in, false));
+	}
+
+	/**
+	 * Check, optimize and link a parsed program once, so that it can be executed
+	 * any number of times.
+	 * 
+	 * @throws JiffyError if the program has a syntax error, has no main
+	 *                    function, or calls a function that does not exist or
+	 *                    with the wrong number of arguments
+	 */
+	public static CompiledProgram compile(JiffyParser jp) throws JiffyError {
+		ParseTree pt = jp.getAST();
+		if (pt == null || jp.getErrorMessage() != null)
+			throw new JiffyError(jp.getErrorMessage());
+
+		HashMap<String, TreeNode> funcs = jp.getFuncs(); // HashMap of function names and corresponding TreeNode
+		if (!funcs.containsKey("main"))
+			throw new JiffyError("Undefined function main");
+		long nodeCount = 0;
+		for (TreeNode funcNode : funcs.values())
+			nodeCount += checkCalls(funcNode, funcs);
+
+		// Executions share the linked tree, so it is a copy of the parse tree of
+		// its own, which the parser, a ProgramModel or another compilation cannot
+		// change
+		if (optimize) {
+			funcs = new Optimizer(pt).getFuncs();
+		} else {
+			funcs = new HashMap<>();
+			for (TreeNode funcNode : pt.getRootNode().getChildren())
+				funcs.put(funcNode.getName(), funcNode.copy()); // the last of a name wins, as in the parser
+		}
+
+		// Resolve every identifier to a slot in its function's activation record
+		Linker.link(funcs);
+		for (TreeNode funcNode : funcs.values())
+			funcNode.freeze();
+
+		HashSet<String> pureFunctions = PurityAnalyzer.findPureFunctions(funcs);
+		return new CompiledProgram(funcs, pureFunctions, jp.getName(), jp.getSourceSize(), jp.getTokenCount(),
+				nodeCount);
+	}
+
+	/**
+	 * @return the number of nodes checked
+	 */
+	private static long checkCalls(TreeNode node, HashMap<String, TreeNode> funcs) throws JiffyError {
+		if (node == null) // empty statement
+			return 0;
+
+		if (node.getKind() == TreeNode.CALL) {
+			TreeNode funcNode = funcs.get(node.getName());
+			if (funcNode == null)
+				throw new JiffyError("Undefined function " + node.getName());
+			if (funcNode.getArity() != node.getChildren().size())
+				throw new JiffyError("Mismatched parameters for " + funcNode.getSymbol());
+		}
+		long count = 1;
+		for (TreeNode child : node.getChildren())
+			count += checkCalls(child, funcs);
+		return count;
+	}
+
+	/**
+	 * Execute a compiled program from main, with fresh activation records,
+	 * profiles and memo caches. Programs with resource limits are interpreted
+	 * only, without the JIT.
+	 * 
+	 * @return the profile and memo caches of the execution
+	 * @throws JiffyError if the program fails while it runs, or a
+	 *             ResourceLimitError if it goes over one of its limits
+	 */
+	static ExecutionResult execute(CompiledProgram program, MemoryManager m, InputSource in, OutputSink out,
+			ResourceLimits limits) throws JiffyError {
+		Interpreter interpreter = new Interpreter(program, m, in, out, limits);
+		interpreter.execute();
+		return interpreter.getResult();
+	}
 
-		// Evaluate the function represented by that node
-		// Second parameter is null because main takes no parameters
-		evaluateFunction(mainNode, null);
+	private void execute() throws JiffyError {
+		ExecutionEvent event = new ExecutionEvent();
+		event.begin();
+		try {
+			run();
+		} catch (JiffyError e) {
+			event.error = e.getMessage();
+			throw e;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.programName = program.getName();
+				event.sourceSize = program.getSourceSize();
+				event.tokenCount = program.getTokenCount();
+				event.nodeCount = program.getNodeCount();
+				event.commit();
+			}
+		}
 	}
 
-	private static String evaluate(TreeNode currentNode) throws FunctionReturned {
-		String val = "";
+	private ExecutionResult getResult() {
+		return new ExecutionResult(profiler, memoCaches.values());
+	}
 
-		if (currentNode.getSymbol().equals("block")) {
+	private void run() throws JiffyError {
+		try {
+			// Program execution starts with the function main
+			// Get the node in the parse tree associated with main
+			TreeNode mainNode = funcs.get("main");
+
+			// Evaluate the function represented by that node
+			// Second parameter is null because main takes no parameters
+			evaluateFunction(mainNode, null);
+		} catch (ResourceGovernor.LimitReached e) {
+			throw e.error;
+		} catch (RuntimeException e) {
+			throw new JiffyError(e.getMessage() != null ? e.getMessage() : e.toString());
+		} catch (StackOverflowError e) {
+			throw new JiffyError("Stack overflow");
+		} finally {
+			sysout.flush();
+		}
+	}
+
+	private Value evaluate(TreeNode currentNode) {
+		Value val = NoneValue.NONE;
+
+		switch (currentNode.getKind()) {
+		case TreeNode.BLOCK:
 			evaluateBlock(currentNode);
-		} else if (currentNode.getSymbol().equals("stmnt_list")) {
+			break;
+		case TreeNode.STATEMENT_LIST:
 			evaluateStatementList(currentNode);
-		} else if (currentNode.getSymbol().equals("=")) {
+			break;
+		case TreeNode.ASSIGN:
 			evaluateAssignmentStatement(currentNode);
-		} else if (currentNode.getSymbol().equals("write")) {
+			break;
+		case TreeNode.WRITE:
 			evaluateWriteStatement(currentNode);
-		} else if (currentNode.getSymbol().equals("read")) {
+			break;
+		case TreeNode.READ:
 			evaluateReadStatement(currentNode);
-		} else if (currentNode.getSymbol().equals("while")) {
+			break;
+		case TreeNode.WHILE:
 			evaluateWhileStatement(currentNode);
-		} else if (currentNode.getSymbol().equals("if")) {
+			break;
+		case TreeNode.IF:
 			evaluateIfStatement(currentNode);
-		} else if (currentNode.getSymbol().equals("return")) {
+			break;
+		case TreeNode.RETURN:
 			evaluateReturnStatement(currentNode);
-		} else if (currentNode.getSymbol().contains("()")) {
+			break;
+		case TreeNode.CALL:
 			val = evaluateFunctionCall(currentNode);
-		} else if (currentNode.isLeaf()) { // leaf node - numeric constant, string literal, or identifier
-			val = evaluateLeafNode(currentNode);
-		} else { // current node corresponds to arithmetic operator
+			break;
+		case TreeNode.IDENTIFIER: // look it up in the activation record
+			val = activationRecord[currentNode.getSlot()];
+			break;
+		case TreeNode.NUMBER: // numeric constant or string literal, parsed by the parser
+		case TreeNode.STRING:
+			val = currentNode.getValue();
+			break;
+		default: // current node corresponds to arithmetic operator
 			val = evaluateArithmeticOperator(currentNode);
 		}
 
-		if (isDouble(val))
-			return simplify(val);
-		else
-			return val;
+		return val;
 	}
 
-	private static void evaluateBlock(TreeNode current) throws FunctionReturned {
+	private void evaluateBlock(TreeNode current) {
 		evaluate(current.getLeft());
 	}
 
-	private static void evaluateStatementList(TreeNode current) throws FunctionReturned {
-		ArrayList<TreeNode> children = current.getChildren();
+	private void evaluateStatementList(TreeNode current) {
+		List<TreeNode> children = current.getChildren();
 	
 		for (TreeNode t : children) {
-			if (t != null)
+			if (t != null) {
+				if (profiler != null)
+					profiler.countStatement(t);
 				evaluate(t);
+				if (returning)
+					return;
+			}
 		}
 	}
 
-	private static void evaluateAssignmentStatement(TreeNode current) throws FunctionReturned {
-		String left;
-		String right;
-		left = current.getLeft().getSymbol();
-		right = evaluate(current.getRight());
-		valueTable.put(left, right);
+	private void evaluateAssignmentStatement(TreeNode current) {
+		Value right = evaluate(current.getRight());
+		if (governor != null)
+			governor.hold(right);
+		activationRecord[current.getLeft().getSlot()] = right;
 	}
 
-	private static void evaluateWriteStatement(TreeNode current) throws FunctionReturned {
+	private void evaluateWriteStatement(TreeNode current) {
 		TreeNode t = current.getLeft();
-		String s = evaluate(t);
-		if (isStringLiteral(s))
-			s = stripEnds(s);
-		System.out.println(s);
+		Value v = evaluate(t);
+		if (governor != null)
+			governor.hold(v);
+		// The only place besides concatenation where a value becomes text
+		sysout.println(v.toString());
 	}
 
-	private static void evaluateReadStatement(TreeNode current) {
+	private void evaluateReadStatement(TreeNode current) {
 		TreeNode t = current.getLeft();
-		String varName = t.getSymbol();
-		String input = sysin.nextLine();
-		valueTable.put(varName, input);
+		if (sysin == LineInput.stdin())
+			sysout.flush(); // show what has been written before waiting for the user
+		Value input = sysin.next();
+		if (input == null)
+			throw new IllegalStateException("No more input for read(" + t.getSymbol() + ")");
+		if (governor != null)
+			governor.hold(input);
+		activationRecord[t.getSlot()] = input;
 	}
 
-	private static boolean evaluateBooleanExpression(TreeNode t) throws NumberFormatException, FunctionReturned {
-		// TODO Auto-generated method stub
-		boolean result = true;
+	private boolean evaluateBooleanExpression(TreeNode t) throws NumberFormatException {
 		TreeNode leftExp = t.getLeft(); // left expression
-		double left = Double.parseDouble(evaluate(leftExp));
+		Value left = evaluate(leftExp);
 		TreeNode rightExp = t.getRight(); // right expression
-		double right = Double.parseDouble(evaluate(rightExp));
-	
-		if (t.getSymbol().equals("?"))
-			result = left == right;
-		else if (t.getSymbol().equals(">"))
-			result = left > right;
-		else if (t.getSymbol().equals("<"))
-			result = left < right;
-	
-		return result;
+		Value right = evaluate(rightExp);
+
+		return Arithmetic.compare(t.getOperator(), left, right);
 	}
 
-	private static void evaluateWhileStatement(TreeNode currentNode) throws FunctionReturned {
-		//Complete this method
-		ArrayList<TreeNode> children = currentNode.getChildren();
+	private void evaluateWhileStatement(TreeNode currentNode) {
+		List<TreeNode> children = currentNode.getChildren();
 		TreeNode boolExp = children.get(0);
 		boolean result = evaluateBooleanExpression(boolExp);
 		while (result) {
 			evaluateBlock(children.get(1));
+			if (returning)
+				return;
+			if (currentProfile != null)
+				currentProfile.countBackEdge();
+			if (governor != null)
+				governor.step();
 			result = evaluateBooleanExpression(boolExp);
-			
+
 		}
 	}
 
-	private static void evaluateIfStatement(TreeNode currentNode) throws FunctionReturned {
-		//Complete this method
-		ArrayList<TreeNode> children = currentNode.getChildren();
+	private void evaluateIfStatement(TreeNode currentNode) {
+		List<TreeNode> children = currentNode.getChildren();
 		TreeNode boolExp = children.get(0);
 		boolean result = evaluateBooleanExpression(boolExp);
 		if (result) {
@@ -149,178 +421,220 @@ public class Interpreter {
 	
 	}
 
-	private static void evaluateReturnStatement(TreeNode currentNode) throws FunctionReturned {
-		String result = evaluate(currentNode.getLeft());
-
-		// Before returning, pop activation record from stack
-		// Set currentActivationRecord to activation record on top of stack
-		valueTable = memMgr.restoreActivationRecord();
+	private void evaluateReturnStatement(TreeNode currentNode) {
+		TreeNode result = currentNode.getLeft();
+		if (result.isTailCall()) {
+			tailCallee = funcs.get(result.getName());
+			tailCallArgs = evaluateArguments(result);
+		} else {
+			returnValue = evaluate(result);
+		}
+		returning = true;
+	}
 
-		throw new FunctionReturned(result);
+	private Value evaluateFunctionCall(TreeNode currentNode) {
+		TreeNode funcNode = funcs.get(currentNode.getName()); // get the node corresponding to function def
+		Value[] actualParams = evaluateArguments(currentNode);
+
+		// A pure function gives the same result for the same arguments
+		MemoCache memo = memoCaches.isEmpty() ? null : memoCaches.get(funcNode);
+		if (memo != null) {
+			Value result = memo.get(actualParams);
+			if (result == null) {
+				result = callFunction(funcNode, actualParams);
+				memo.put(actualParams, result);
+			}
+			return result;
+		}
+		return callFunction(funcNode, actualParams);
 	}
 
-	private static String evaluateFunctionCall(TreeNode currentNode) throws FunctionReturned {
-		// TODO Auto-generated method stub
-		String funcName = getFuncName(currentNode.getSymbol());
-		TreeNode funcNode = funcs.get(funcName); // get the node corresponding to function def
+	private Value callFunction(TreeNode funcNode, Value[] actualParams) {
+		if (jit) {
+			Value result = invokeCompiled(funcNode, actualParams);
+			if (result != null)
+				return result;
+		}
+
+		// evaluate the node associated with this function with the specified parameters
+		return evaluateFunction(funcNode, actualParams);
+	}
 
+	private Value[] evaluateArguments(TreeNode call) {
 		// Need to pass parameters
 		// each parameter is an expression, so evaluate it first
-		ArrayList<TreeNode> params = currentNode.getChildren();
-		String[] actualParams = new String[params.size()];
+		List<TreeNode> params = call.getChildren();
+		Value[] actualParams = new Value[params.size()];
 		for (int i = 0; i < params.size(); i++)
 			actualParams[i] = evaluate(params.get(i));
-
-		// evaluate the node associated with this function with the specified parameters
-		return evaluateFunction(funcNode, actualParams);
+		return actualParams;
 	}
 
-	private static String evaluateLeafNode(TreeNode current) {
-		String val;
-		String symbol = current.getSymbol();
-		try { // maybe numeric constant
-			Double.parseDouble(symbol);
-		} catch (Exception e) {
-			// oops. Not a double constant. Must be an identifier or string literal
-			if (!isStringLiteral(symbol)) // identifier
-				symbol = valueTable.get(symbol); // look it up in symbol table
-		}
-		val = symbol;
-		return val;
+	/**
+	 * Once a function is hot, run its compiled code if it has any. Only called
+	 * if the JIT is on.
+	 * 
+	 * @return the result, or null if the call must be interpreted
+	 */
+	private Value invokeCompiled(TreeNode funcNode, Value[] actualParams) {
+		FunctionProfile profile = getProfile(funcNode);
+		FunctionCode code = profile.getCode();
+		if (code.getCode() != null)
+			return code.invoke(actualParams);
+		if (profile.countInvocation())
+			code.compile(funcs);
+		return null;
 	}
 
-	private static String evaluateArithmeticOperator(TreeNode current) throws FunctionReturned {
+	private Value evaluateArithmeticOperator(TreeNode current) {
 		TreeNode leftChild = current.getLeft();
 		TreeNode rightChild = current.getRight();
-		double leftVal = Double.parseDouble(evaluate(leftChild));
-		double rightVal = Double.parseDouble(evaluate(rightChild));
-		
-		String op = current.getSymbol();
-		double result = 0;
-		if(op.equals("+"))
-			result = leftVal + rightVal;
-		else if (op.equals("*"))
-			result = leftVal * rightVal;
-		else if (op.equals("-"))
-			result = leftVal - rightVal;
-		else if (op.equals("/"))
-			result = leftVal/rightVal;
-		else if (op.equals("^")) //exponential where leftVal is the base and rightVal is the exponent
-			result = Math.pow(leftVal,rightVal);
-		else if (op.equals("$")) //max function that gives the greater of the two values
-			if (leftVal > rightVal)
-				result = leftVal;
-			else
-				result = rightVal;
-		else if (op.equals("%")) //modulo function that gives the remainder when one number is divided by another
-			result = leftVal % rightVal;
-		
-		
-		
-		return Double.toString(result);
-	}
-
-	private static String evaluateFunction(TreeNode funcNode, String[] actualParams) {
-		// Need to handle function parameters
-		ArrayList<TreeNode> children = funcNode.getChildren();
+		Value leftVal = evaluate(leftChild);
+		Value rightVal = evaluate(rightChild);
 
+		return Arithmetic.apply(current.getOperator(), leftVal, rightVal);
+	}
+
+	private Value evaluateFunction(TreeNode funcNode, Value[] actualParams) {
 		//Get activation record from memory manager
-		valueTable = memMgr.getActivationRecord(getFuncName(funcNode.getSymbol()));
+		Value[] record = memMgr.getActivationRecord(funcNode.getFrameSize());
+		FunctionProfile callerProfile = currentProfile;
+		if (profiler != null)
+			profiler.enter(funcNode);
+		if (governor != null)
+			governor.enter(record);
+		TreeNode calledNode = funcNode;
+		// Memoized functions reached by tail calls, which return the result of
+		// the last call like the first one does
+		ArrayDeque<MemoCache> tailMemos = null;
+		ArrayDeque<Value[]> tailMemoArgs = null;
+		SlowCallEvent slowCall = null;
+		if (slowCalls) {
+			slowCall = new SlowCallEvent();
+			slowCall.begin();
+		}
+		try {
+			while (true) {
+				bindParameters(funcNode, record, actualParams);
+				activationRecord = record;
+				if (jit)
+					currentProfile = getProfile(funcNode);
+
+				TreeNode funcBody = funcNode.getChildren().get(funcNode.getArity()); // the block associated with this function
+				evaluate(funcBody);
+				returning = false;
+				if (tailCallee == null)
+					return remember(tailMemos, tailMemoArgs, returnValue);
+
+				// The body returned a call in tail position. Make it here, in the
+				// same Java frame and, if the callee has the same size, the same
+				// activation record
+				funcNode = tailCallee;
+				actualParams = tailCallArgs;
+				tailCallee = null;
+				tailCallArgs = null;
+
+				MemoCache memo = memoCaches.isEmpty() ? null : memoCaches.get(funcNode);
+				if (memo != null) {
+					Value result = memo.get(actualParams);
+					if (result != null)
+						return remember(tailMemos, tailMemoArgs, result);
+					if (tailMemos == null) {
+						tailMemos = new ArrayDeque<>();
+						tailMemoArgs = new ArrayDeque<>();
+					} else if (tailMemos.size() == memo.getCapacity()) {
+						// A cache keeps no more than its capacity of the last results
+						tailMemos.removeFirst();
+						tailMemoArgs.removeFirst();
+					}
+					tailMemos.addLast(memo);
+					tailMemoArgs.addLast(actualParams);
+				}
 
-		// Copy values for all parameters - pass by value
-		int size = children.size();
-		if (actualParams != null) {
-			if (actualParams.length == size - 1) {
-				for (int i = 0; i < size - 1; i++) {
-					TreeNode param = children.get(i);
-					String paramSymbol = param.getSymbol();
+				if (profiler != null) { // the callee takes the caller's place
+					profiler.exit();
+					profiler.enter(funcNode);
+				}
 
-					String value = actualParams[i];
-					valueTable.put(paramSymbol, value);
+				if (jit) {
+					Value result = invokeCompiled(funcNode, actualParams);
+					if (result != null)
+						return remember(tailMemos, tailMemoArgs, result);
 				}
-			} else {
-				System.out.println("Mismatched parameters for " + funcNode.getSymbol());
-				System.exit(0);
+
+				if (record.length == funcNode.getFrameSize()) {
+					Arrays.fill(record, null);
+				} else {
+					memMgr.restoreActivationRecord();
+					record = memMgr.getActivationRecord(funcNode.getFrameSize());
+				}
+				if (governor != null)
+					governor.replace(record);
 			}
-		}
-		TreeNode funcBody = children.get(size - 1); // the block associated with this function
-		try {
-			return evaluate(funcBody);
-		} catch (FunctionReturned e) {
-			// The return statement in the funcBody throws this exception
-			// which is caught here and the result extracted
-			// from it
-			return e.getResult();
+		} finally {
+			// Before returning, pop activation record from stack
+			// Set currentActivationRecord to activation record on top of stack
+			activationRecord = memMgr.restoreActivationRecord();
+			currentProfile = callerProfile;
+			if (profiler != null)
+				profiler.exit();
+			if (governor != null)
+				governor.exit();
+			if (slowCall != null)
+				commitSlowCall(slowCall, calledNode);
 		}
 	}
 
-	private static String getFuncName(String symbol) {
-		// TODO Auto-generated method stub
-		int beginIndex = 0;
-		if (symbol.contains("fun"))
-			beginIndex = symbol.indexOf(' ') + 1;
-		int endIndex = symbol.indexOf('(');
-		return symbol.substring(beginIndex, endIndex);
-	}
-
-	private static String add(String left, String right) {
-		// + is overloaded. Can mean floating point addition or string concatenation
-		// figure out which meaning applies and do the corresponding operation
-		String val;
-		try { 
-			// maybe doubles? If so, parse them and do floating point +
-			double left_op = Double.parseDouble(left);
-			double right_op = Double.parseDouble(right);
-			val = Double.toString(left_op + right_op);
-		} catch (NumberFormatException e) { 
-			// one or both not a double. + means concatenation
-			if (isStringLiteral(left))
-				left = stripEnds(left);
-			if (isStringLiteral(right))
-				right = stripEnds(right);
-			val = left + right;
+	/**
+	 * Store the result of a chain of tail calls for each memoized call in it.
+	 * 
+	 * @return the result
+	 */
+	private static Value remember(ArrayDeque<MemoCache> memos, ArrayDeque<Value[]> args, Value result) {
+		if (memos != null) {
+			while (!memos.isEmpty())
+				memos.removeFirst().put(args.removeFirst(), result);
 		}
-
-		return val;
-	}
-
-	private static boolean isStringLiteral(String s) {
-		// TODO Auto-generated method stub
-		return (s.charAt(0) == '\"');
+		return result;
 	}
 
-	private static boolean isDouble(String val) {
-		if (val.equals(""))
-			return false;
-		else {
-			try {
-				Double.parseDouble(val);
-				return true;
-			} catch (NumberFormatException e) {
-				return false;
-			}
+	private void commitSlowCall(SlowCallEvent event, TreeNode funcNode) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.programName = program.getName();
+			event.sourceSize = program.getSourceSize();
+			event.function = funcNode.getName();
+			event.argumentCount = funcNode.getArity();
+			event.commit();
 		}
 	}
 
-	private static String simplify(String val) {
-		// if val can be replaced by int, do so, dropping the trailing .0
-		double d = Double.parseDouble(val);
-
-		Double dval = d;
+	private void bindParameters(TreeNode funcNode, Value[] record, Value[] actualParams) {
+		// Copy values for all parameters - pass by value
+		if (actualParams != null) {
+			if (actualParams.length == funcNode.getArity()) {
+				List<TreeNode> children = funcNode.getChildren();
+				for (int i = 0; i < actualParams.length; i++) {
+					TreeNode param = children.get(i);
 
-		int x = dval.intValue();
-		if (d - x == 0.0) {
-			return Integer.toString(x);
-		} else
-			return Double.toString(d);
+					Value value = actualParams[i];
+					if (governor != null)
+						governor.hold(value);
+					record[param.getSlot()] = value;
+				}
+			} else {
+				throw new IllegalArgumentException("Mismatched parameters for " + funcNode.getSymbol());
+			}
+		}
 	}
 
-	private static String stripEnds(String s) {
-		// TODO Auto-generated method stub
-		String result = "";
-		for (int i = 1; i <= s.length() - 2; i++)
-			result += s.charAt(i);
-		return result;
+	private FunctionProfile getProfile(TreeNode funcNode) {
+		FunctionProfile profile = profiles.get(funcNode);
+		if (profile == null) {
+			profile = new FunctionProfile(program.getCode(funcNode));
+			profiles.put(funcNode, profile);
+		}
+		return profile;
 	}
 
-}
\ No newline at end of file
+}
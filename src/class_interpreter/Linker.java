@@ -0,0 +1,70 @@
+package class_interpreter;
+
+import java.util.HashMap;
+import java.util.List;
+
+import class_helper.TreeNode;
+
+/**
+ * Linker resolves every identifier of a function to a slot in that function's
+ * activation record. Parameter i always gets slot i, and the other variables
+ * follow in the order they first appear. Once a program is linked the
+ * interpreter reads and writes variables by index instead of by name.
+ * 
+ * The Linker also marks the calls in tail position, i.e. calls whose result is
+ * returned right away, so that engines can make them without growing the stack.
+ */
+public class Linker {
+	private HashMap<String, Integer> slots = new HashMap<>();
+	private int frameSize = 0;
+
+	/**
+	 * Link every function of a program.
+	 * 
+	 * @param funcs HashMap of function names and corresponding TreeNode
+	 */
+	public static void link(HashMap<String, TreeNode> funcs) {
+		for (TreeNode funcNode : funcs.values())
+			new Linker().linkFunction(funcNode);
+	}
+
+	private void linkFunction(TreeNode funcNode) {
+		List<TreeNode> children = funcNode.getChildren();
+		int size = children.size();
+
+		// Formal parameters come first, the block is the last child.
+		// If a name is repeated, the last parameter with that name wins
+		for (int i = 0; i < size - 1; i++) {
+			TreeNode param = children.get(i);
+			param.setSlot(frameSize++);
+			slots.put(param.getSymbol(), param.getSlot());
+		}
+		linkNode(children.get(size - 1));
+
+		funcNode.setFrameSize(frameSize);
+	}
+
+	private void linkNode(TreeNode node) {
+		if (node == null) // empty statement
+			return;
+
+		if (node.getKind() == TreeNode.IDENTIFIER) {
+			resolve(node);
+		} else {
+			if (node.getKind() == TreeNode.RETURN && node.getLeft().getKind() == TreeNode.CALL)
+				node.getLeft().setTailCall(true);
+			for (TreeNode child : node.getChildren())
+				linkNode(child);
+		}
+	}
+
+	private void resolve(TreeNode identifier) {
+		String name = identifier.getSymbol();
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = frameSize++;
+			slots.put(name, slot);
+		}
+		identifier.setSlot(slot);
+	}
+}
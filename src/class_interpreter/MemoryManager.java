@@ -1,8 +1,26 @@
 package class_interpreter;
 
-import java.util.HashMap;
+import class_runtime.Value;
 
+/**
+ * A MemoryManager hands out activation records. An activation record is an
+ * array of values indexed by the slot numbers that Linker assigns to the
+ * identifiers of a function.
+ */
 public interface MemoryManager {
-	public HashMap<String, String> getActivationRecord(String funcName);
-	public HashMap<String, String> restoreActivationRecord();
+	/**
+	 * Push a fresh activation record for a function call.
+	 * 
+	 * @param frameSize the number of slots the called function needs
+	 * @return the new activation record, with every slot empty
+	 */
+	public Value[] getActivationRecord(int frameSize);
+
+	/**
+	 * Pop the activation record of the function that is returning.
+	 * 
+	 * @return the activation record of the caller, now on top of the stack, or
+	 *         null if the stack is empty
+	 */
+	public Value[] restoreActivationRecord();
 }
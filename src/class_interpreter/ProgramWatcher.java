@@ -0,0 +1,101 @@
+package class_interpreter;
+
+import java.io.File;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import class_helper.FileProcessor;
+import class_helper.JiffyError;
+import class_parser.ProgramModel;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.LineInput;
+
+/**
+ * ProgramWatcher runs a program file every time it is saved. The program is
+ * kept in a ProgramModel, so a save only parses the functions that changed.
+ *
+ * Usage: java class_interpreter.ProgramWatcher program.jif
+ */
+public class ProgramWatcher {
+	private final Path file;
+	private final InputSource input;
+	private ProgramModel model;
+	private String lastText;
+
+	public ProgramWatcher(File file, InputSource input) {
+		this.file = file.toPath().toAbsolutePath();
+		this.input = input;
+	}
+
+	/**
+	 * Run the program, then run it again after every change, until the thread is
+	 * interrupted.
+	 */
+	public void watch() throws Exception {
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			reload();
+			while (true) {
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (file.getFileName().equals(event.context()))
+						changed = true;
+				}
+				key.reset();
+				if (changed)
+					reload();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stop watching
+		}
+	}
+
+	/**
+	 * Read the file again and run it if it parses. Editors often write a file
+	 * in more than one step, so a save that does not change the text is
+	 * ignored.
+	 */
+	private void reload() throws Exception {
+		String text = Files.readString(file);
+		if (text.equals(lastText))
+			return;
+		lastText = text;
+
+		long start = System.nanoTime();
+		if (model == null)
+			model = new ProgramModel(text);
+		else
+			model.update(text);
+		long micros = (System.nanoTime() - start) / 1000;
+		if (model.getErrorMessage() != null) {
+			System.err.println("\t" + model.getErrorMessage());
+			return;
+		}
+
+		System.out.println("------------" + file.getFileName() + ": parsed " + model.getReparsed() + " of "
+				+ model.getDeclarationCount() + " functions in " + micros + " us------------");
+		try {
+			Interpreter.compile(model.getParser()).execute(input, BufferedOutput.stdout());
+		} catch (JiffyError e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: java class_interpreter.ProgramWatcher program.jif");
+			return;
+		}
+		File file = FileProcessor.findProgramFile(args[0]);
+		new ProgramWatcher(file, LineInput.stdin()).watch();
+	}
+}
@@ -0,0 +1,142 @@
+package class_interpreter;
+
+import java.util.Arrays;
+
+import class_interpreter.ResourceLimitError.Resource;
+import class_runtime.BigIntegerValue;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * A ResourceGovernor enforces the ResourceLimits of one execution. Interpreter
+ * counts a step for every call and loop iteration; the step count is checked
+ * every time, and the clock and the memory held only every CHECK_INTERVAL
+ * steps. A value that is stored is checked on its own right away, so that a
+ * string doubled in a loop is stopped before it is flattened.
+ */
+final class ResourceGovernor {
+	// Steps between checks of the clock and of the memory held
+	private static final int CHECK_INTERVAL = 1024;
+
+	// Estimated sizes in bytes, as on a 64-bit JVM with compressed references
+	private static final long RECORD_SIZE = 16;
+	private static final long SLOT_SIZE = 4;
+	private static final long VALUE_SIZE = 16;
+	private static final long STRING_SIZE = 40;
+
+	private final ResourceLimits limits;
+	private final long deadline;
+	private long steps = 0;
+	private int untilCheck = CHECK_INTERVAL;
+
+	// The activation records of the calls running, innermost last
+	private Value[][] records = new Value[64][];
+	private int depth = 0;
+
+	/**
+	 * Thrown through the interpreter when a limit is reached, and turned into
+	 * the ResourceLimitError when the execution ends.
+	 */
+	@SuppressWarnings("serial")
+	static final class LimitReached extends RuntimeException {
+		final ResourceLimitError error;
+
+		LimitReached(ResourceLimitError error) {
+			super(error.getMessage(), null, false, false);
+			this.error = error;
+		}
+	}
+
+	ResourceGovernor(ResourceLimits limits) {
+		this.limits = limits;
+		this.deadline = System.nanoTime() + limits.getTimeoutNanos();
+	}
+
+	/**
+	 * Count a loop iteration.
+	 */
+	void step() {
+		steps++;
+		if (limits.getFuel() != 0 && steps > limits.getFuel())
+			throw new LimitReached(new ResourceLimitError(Resource.FUEL, "Out of fuel after " + limits.getFuel() + " steps"));
+		if (--untilCheck == 0)
+			check();
+	}
+
+	/**
+	 * Count a call, which runs in the given activation record.
+	 */
+	void enter(Value[] record) {
+		if (limits.getMaxCallDepth() != 0 && depth == limits.getMaxCallDepth())
+			throw new LimitReached(new ResourceLimitError(Resource.CALL_DEPTH,
+					"Call depth limit of " + limits.getMaxCallDepth() + " exceeded"));
+		if (depth == records.length)
+			records = Arrays.copyOf(records, depth * 2);
+		records[depth++] = record;
+		step();
+	}
+
+	/**
+	 * A call in tail position runs in place of its caller, in the given record.
+	 */
+	void replace(Value[] record) {
+		records[depth - 1] = record;
+		step();
+	}
+
+	void exit() {
+		records[--depth] = null;
+	}
+
+	/**
+	 * Check a value that is about to be stored or written.
+	 */
+	void hold(Value value) {
+		long max = limits.getMaxMemory();
+		if (max != 0 && sizeOf(value) > max)
+			throw memoryExceeded();
+	}
+
+	private void check() {
+		untilCheck = CHECK_INTERVAL;
+		if (limits.getTimeoutNanos() != 0 && System.nanoTime() - deadline > 0)
+			throw new LimitReached(new ResourceLimitError(Resource.TIME,
+					"Time limit of " + limits.getTimeoutNanos() / 1000000 + " ms exceeded"));
+		if (limits.getMaxMemory() != 0 && getMemoryHeld() > limits.getMaxMemory())
+			throw memoryExceeded();
+	}
+
+	private LimitReached memoryExceeded() {
+		return new LimitReached(new ResourceLimitError(Resource.MEMORY,
+				"Memory limit of " + limits.getMaxMemory() + " bytes exceeded"));
+	}
+
+	/**
+	 * Estimate the size of the values held by the calls running. A value held
+	 * in several records is counted in each.
+	 */
+	long getMemoryHeld() {
+		long total = 0;
+		for (int i = 0; i < depth; i++) {
+			Value[] record = records[i];
+			total += RECORD_SIZE + SLOT_SIZE * record.length;
+			for (Value value : record) {
+				if (value != null)
+					total += sizeOf(value);
+			}
+		}
+		return total;
+	}
+
+	private static long sizeOf(Value value) {
+		if (value instanceof StringValue)
+			return STRING_SIZE + 2L * ((StringValue) value).length();
+		if (value instanceof BigIntegerValue)
+			return STRING_SIZE + ((BigIntegerValue) value).toBigInteger().bitLength() / 8;
+		return VALUE_SIZE;
+	}
+
+	long getSteps() {
+		return steps;
+	}
+}
@@ -0,0 +1,28 @@
+package class_interpreter;
+
+import class_helper.JiffyError;
+
+/**
+ * The error an execution ends with when it goes over one of its
+ * ResourceLimits. The program's output up to that point has been flushed.
+ */
+@SuppressWarnings("serial")
+public class ResourceLimitError extends JiffyError {
+	public enum Resource {
+		FUEL, TIME, CALL_DEPTH, MEMORY
+	}
+
+	private final Resource resource;
+
+	public ResourceLimitError(Resource resource, String message) {
+		super(message);
+		this.resource = resource;
+	}
+
+	/**
+	 * Get the resource that ran out.
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+}
@@ -0,0 +1,100 @@
+package class_interpreter;
+
+import java.time.Duration;
+
+/**
+ * ResourceLimits bound what one execution of a program may use, so that
+ * programs from untrusted users can be run safely. A limit of 0 means no
+ * limit. An execution that goes over a limit ends with a ResourceLimitError.
+ *
+ * The limits are:
+ * <ul>
+ * <li>fuel: the number of steps, where a step is a function call or a loop
+ * iteration</li>
+ * <li>timeout: wall-clock time from the start of the execution</li>
+ * <li>maximum call depth: the number of nested function calls; calls in tail
+ * position do not nest</li>
+ * <li>maximum memory: the estimated size in bytes of the values held in the
+ * activation records of the functions running, where a string counts with
+ * its full length even before it is flattened</li>
+ * </ul>
+ *
+ * Each limit stops a different kind of runaway program:
+ * <ul>
+ * <li>a loop that never ends, including a function that calls itself in
+ * tail position forever, runs in constant memory and depth, so only fuel or
+ * a timeout stops it;</li>
+ * <li>recursion that never ends is stopped by the maximum call depth, and
+ * also by fuel or a timeout;</li>
+ * <li>a program that builds ever larger values, such as a string doubled in
+ * a loop, is stopped by the maximum memory, usually long before fuel or a
+ * timeout would stop it.</li>
+ * </ul>
+ * So limits for untrusted programs should always include fuel or a timeout;
+ * without either, a program may run forever.
+ *
+ * ResourceLimits are immutable; the with methods return new limits.
+ */
+public final class ResourceLimits {
+	public static final ResourceLimits NONE = new ResourceLimits(0, 0, 0, 0);
+
+	private final long fuel;
+	private final long timeoutNanos;
+	private final int maxCallDepth;
+	private final long maxMemory;
+
+	private ResourceLimits(long fuel, long timeoutNanos, int maxCallDepth, long maxMemory) {
+		this.fuel = fuel;
+		this.timeoutNanos = timeoutNanos;
+		this.maxCallDepth = maxCallDepth;
+		this.maxMemory = maxMemory;
+	}
+
+	public ResourceLimits withFuel(long steps) {
+		return new ResourceLimits(check(steps), timeoutNanos, maxCallDepth, maxMemory);
+	}
+
+	public ResourceLimits withTimeout(Duration timeout) {
+		return new ResourceLimits(fuel, check(timeout.toNanos()), maxCallDepth, maxMemory);
+	}
+
+	public ResourceLimits withMaxCallDepth(int depth) {
+		return new ResourceLimits(fuel, timeoutNanos, (int) check(depth), maxMemory);
+	}
+
+	public ResourceLimits withMaxMemory(long bytes) {
+		return new ResourceLimits(fuel, timeoutNanos, maxCallDepth, check(bytes));
+	}
+
+	private static long check(long limit) {
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit " + limit);
+		return limit;
+	}
+
+	public long getFuel() {
+		return fuel;
+	}
+
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	public int getMaxCallDepth() {
+		return maxCallDepth;
+	}
+
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	public boolean isUnlimited() {
+		return fuel == 0 && timeoutNanos == 0 && maxCallDepth == 0 && maxMemory == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "fuel " + fuel + ", timeout " + timeoutNanos / 1000000 + " ms, call depth " + maxCallDepth
+				+ ", memory " + maxMemory + " bytes";
+	}
+}
@@ -0,0 +1,103 @@
+package class_interpreter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import class_runtime.InputSource;
+import class_runtime.OutputSink;
+
+/**
+ * A ScriptExecutor runs compiled programs concurrently, each on a thread of its
+ * own with its own memory, input and output. On a JVM with virtual threads
+ * every execution gets a virtual thread; otherwise executions share a pool of
+ * one platform thread per core.
+ */
+public class ScriptExecutor implements AutoCloseable {
+	// Deeply recursive programs need more stack than a pool thread gets by default
+	private static final long STACK_SIZE = 64L << 20;
+
+	private final ExecutorService executor;
+
+	public ScriptExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads the number of platform threads to run on if there are no
+	 *                virtual threads
+	 */
+	public ScriptExecutor(int threads) {
+		ExecutorService virtual = newVirtualThreadExecutor();
+		executor = virtual != null ? virtual : Executors.newFixedThreadPool(threads, new ScriptThreadFactory());
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			// Looked up by name, so that the interpreter still runs on Java 17
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Execute a program.
+	 * 
+	 * @return a Future of the program's ExecutionResult, or that fails with
+	 *         the program's JiffyError
+	 */
+	public Future<ExecutionResult> submit(CompiledProgram program, InputSource input, OutputSink output) {
+		return submit(program, input, output, ResourceLimits.NONE);
+	}
+
+	/**
+	 * Execute a program within the given limits, so that a program that loops
+	 * or recurses forever, or holds too much memory, ends with a
+	 * ResourceLimitError instead of taking up its thread. Only fuel or a
+	 * timeout stops a loop that never ends; see ResourceLimits.
+	 */
+	public Future<ExecutionResult> submit(CompiledProgram program, InputSource input, OutputSink output,
+			ResourceLimits limits) {
+		return executor.submit(() -> program.execute(input, output, limits));
+	}
+
+	/**
+	 * Execute a program on the given input text.
+	 * 
+	 * @return a Future of what the program writes
+	 */
+	public Future<String> submit(CompiledProgram program, String input) {
+		return executor.submit(() -> program.execute(input));
+	}
+
+	/**
+	 * Wait for the submitted programs to end, and stop the threads. If the
+	 * waiting thread is interrupted, the programs still running are left to
+	 * end on their own, and the thread's interrupt status is set again.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class ScriptThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(null, r, "jiffy-" + count.incrementAndGet(), STACK_SIZE);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package class_interpreter;
+
+import java.util.Arrays;
+
+import class_runtime.Value;
+
+/**
+ * A MemoryManager that keeps activation records on an array-backed stack and
+ * recycles them. Records that are popped are cleared and put back in a pool
+ * for their size, so a program that keeps calling the same functions stops
+ * allocating once the deepest call chain has been reached.
+ */
+public class StackMemoryManager implements MemoryManager {
+	private static final int INITIAL_DEPTH = 64;
+
+	private Value[][] stack = new Value[INITIAL_DEPTH][];
+	private int depth = 0;
+
+	// pools[n] holds free records of size n; poolSizes[n] is how many are free
+	private Value[][][] pools = new Value[8][][];
+	private int[] poolSizes = new int[8];
+
+	@Override
+	public Value[] getActivationRecord(int frameSize) {
+		Value[] record = take(frameSize);
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, depth * 2);
+		stack[depth++] = record;
+		return record;
+	}
+
+	@Override
+	public Value[] restoreActivationRecord() {
+		Value[] record = stack[--depth];
+		stack[depth] = null;
+		give(record);
+		return depth == 0 ? null : stack[depth - 1];
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	private Value[] take(int frameSize) {
+		if (frameSize < pools.length && poolSizes[frameSize] > 0)
+			return pools[frameSize][--poolSizes[frameSize]];
+		return new Value[frameSize];
+	}
+
+	private void give(Value[] record) {
+		int size = record.length;
+		if (size >= pools.length) {
+			int length = Math.max(pools.length * 2, size + 1);
+			pools = Arrays.copyOf(pools, length);
+			poolSizes = Arrays.copyOf(poolSizes, length);
+		}
+		Value[][] pool = pools[size];
+		if (pool == null)
+			pool = pools[size] = new Value[INITIAL_DEPTH][];
+		else if (poolSizes[size] == pool.length)
+			pool = pools[size] = Arrays.copyOf(pool, pool.length * 2);
+
+		// Drop the old values so the next call starts with empty slots
+		Arrays.fill(record, null);
+		pool[poolSizes[size]++] = record;
+	}
+}
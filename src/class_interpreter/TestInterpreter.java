@@ -1,30 +1,68 @@
 package class_interpreter;
 
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-import class_helper.FileProcessor;
+import class_nodes.NodeInterpreter;
+import class_optimizer.MemoCache;
+import class_parser.JiffyParser;
+import class_runtime.LineInput;
+import class_vm.VirtualMachine;
 
 public class TestInterpreter {
+	// Engine to run programs on: "tree" (default), "nodes" or "vm"
+	private static String engine = "tree";
+	// A second argument "memo" memoizes pure functions on the tree engine, and
+	// "profile" prints a profile and writes its stacks to profile.folded
+	private static boolean memoize = false;
+	private static boolean profile = false;
+
 	public static void interpretFile(String filename) throws Exception {
-		String programText = FileProcessor.readProgramFile(filename);
-		interpretText(programText);
+		// Any path works; an unchanged program is loaded from its .jifc file
+		interpret(JiffyParser.parseFile(filename, true));
+	}
+
+	private static void interpretText(String programText) throws Exception {
+		interpret(new JiffyParser(programText, true));
 	}
 
-	private static void interpretText(String programText) {
-		Interpreter.interpret(programText, new BasicMemoryManager(), true);
+	private static void interpret(JiffyParser jp) throws Exception {
+		if (engine.equals("vm"))
+			VirtualMachine.interpret(jp, true);
+		else if (engine.equals("nodes"))
+			NodeInterpreter.interpret(jp, true);
+		else {
+			Interpreter.setMemoize(memoize);
+			Interpreter.setProfiling(profile);
+			ExecutionResult result = Interpreter.interpret(jp, new StackMemoryManager(), true);
+			if (result == null)
+				return;
+			for (MemoCache memo : result.getMemoCaches())
+				System.out.println(memo);
+			ExecutionProfiler profiler = result.getProfile();
+			if (profiler != null) {
+				System.out.print(profiler.report());
+				Files.writeString(Path.of("profile.folded"), profiler.collapsedStacks());
+			}
+		}
 	}
 
 	public static void main(String[] args) throws Exception {
-		Scanner s = new Scanner(System.in);
+		if (args.length > 0)
+			engine = args[0];
+		if (args.length > 1) {
+			memoize = args[1].equals("memo");
+			profile = args[1].equals("profile");
+		}
+		// Read through the same LineInput as the program's read statements, so
+		// that lines after the first are left for the program
 		System.out.println("Enter program, or program filename, to INTERPRET: ");
-		String input = s.nextLine();
+		String input = LineInput.stdin().readLine();
 
 		if (input.startsWith("fun "))
 			interpretText(input);
 		else
 			interpretFile(input);
-
-		s.close();
 	}
 
 }
@@ -0,0 +1,166 @@
+package class_jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * ClassWriter builds the bytes of a class file. It only supports what
+ * JitCompiler needs: a constant pool, interfaces and methods with a Code
+ * attribute. Classes are written in version 49 (Java 5) format, which the JVM
+ * verifies by type inference, so no StackMapTable has to be computed.
+ */
+public class ClassWriter {
+	private static final int VERSION = 49;
+
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private DataOutputStream pool = new DataOutputStream(poolBytes);
+	private int poolCount = 1;
+	private HashMap<String, Integer> poolIndex = new HashMap<>();
+
+	private int thisClass;
+	private int superClass;
+	private int[] interfaces;
+	private ArrayList<byte[]> methods = new ArrayList<>();
+
+	public ClassWriter(String name, String superName, String... interfaceNames) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		interfaces = new int[interfaceNames.length];
+		for (int i = 0; i < interfaceNames.length; i++)
+			interfaces[i] = classRef(interfaceNames[i]);
+	}
+
+	public int utf8(String s) {
+		Integer index = poolIndex.get("U" + s);
+		if (index != null)
+			return index;
+		try {
+			pool.writeByte(1);
+			pool.writeUTF(s);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add("U" + s, 1);
+	}
+
+	public int classRef(String internalName) {
+		return reference("C", 7, utf8(internalName), -1);
+	}
+
+	public int methodRef(String owner, String name, String descriptor) {
+		return reference("M", 10, classRef(owner), nameAndType(name, descriptor));
+	}
+
+	public int interfaceMethodRef(String owner, String name, String descriptor) {
+		return reference("I", 11, classRef(owner), nameAndType(name, descriptor));
+	}
+
+	public int fieldRef(String owner, String name, String descriptor) {
+		return reference("F", 9, classRef(owner), nameAndType(name, descriptor));
+	}
+
+	public int doubleConstant(double d) {
+		String key = "D" + Double.doubleToRawLongBits(d);
+		Integer index = poolIndex.get(key);
+		if (index != null)
+			return index;
+		try {
+			pool.writeByte(6);
+			pool.writeDouble(d);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add(key, 2); // doubles take two constant pool entries
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		return reference("N", 12, utf8(name), utf8(descriptor));
+	}
+
+	private int reference(String kind, int tag, int first, int second) {
+		String key = kind + first + ":" + second;
+		Integer index = poolIndex.get(key);
+		if (index != null)
+			return index;
+		try {
+			pool.writeByte(tag);
+			pool.writeShort(first);
+			if (second >= 0)
+				pool.writeShort(second);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add(key, 1);
+	}
+
+	private int add(String key, int size) {
+		int index = poolCount;
+		poolCount += size;
+		poolIndex.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Add a method with a Code attribute.
+	 */
+	public void addMethod(int access, String name, String descriptor, CodeBuilder code) {
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int codeIndex = utf8("Code");
+		byte[] bytecode = code.toByteArray();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+			out.writeShort(1); // one attribute: Code
+			out.writeShort(codeIndex);
+			out.writeInt(12 + bytecode.length);
+			out.writeShort(code.getMaxStack());
+			out.writeShort(code.getMaxLocals());
+			out.writeInt(bytecode.length);
+			out.write(bytecode);
+			out.writeShort(0); // no exception table
+			out.writeShort(0); // no attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			out.write(poolBytes.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (int i : interfaces)
+				out.writeShort(i);
+			out.writeShort(0); // no fields
+			out.writeShort(methods.size());
+			for (byte[] m : methods)
+				out.write(m);
+			out.writeShort(0); // no attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,183 @@
+package class_jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * CodeBuilder assembles the bytecode of one method. It keeps track of the
+ * operand stack depth, in JVM words, to compute max_stack, and resolves
+ * branches to labels once the code is complete.
+ */
+public class CodeBuilder {
+	public static final int DCONST_0 = 0x0e;
+	public static final int SIPUSH = 0x11;
+	public static final int LDC2_W = 0x14;
+	public static final int DLOAD = 0x18;
+	public static final int ALOAD_0 = 0x2a;
+	public static final int ALOAD_1 = 0x2b;
+	public static final int DALOAD = 0x31;
+	public static final int DSTORE = 0x39;
+	public static final int DADD = 0x63;
+	public static final int DSUB = 0x67;
+	public static final int DMUL = 0x6b;
+	public static final int DDIV = 0x6f;
+	public static final int DREM = 0x73;
+	public static final int DCMPL = 0x97;
+	public static final int DCMPG = 0x98;
+	public static final int IFNE = 0x9a;
+	public static final int IFGE = 0x9c;
+	public static final int IFLE = 0x9e;
+	public static final int GOTO = 0xa7;
+	public static final int DRETURN = 0xaf;
+	public static final int RETURN = 0xb1;
+	public static final int GETSTATIC = 0xb2;
+	public static final int INVOKESPECIAL = 0xb7;
+	public static final int INVOKESTATIC = 0xb8;
+	public static final int ATHROW = 0xbf;
+	public static final int WIDE = 0xc4;
+
+	/**
+	 * A position in the code that branches can refer to before it is known.
+	 */
+	public static class Label {
+		private int position = -1;
+		private ArrayList<Integer> branches = new ArrayList<>();
+	}
+
+	private byte[] code = new byte[256];
+	private int length = 0;
+	private int depth = 0;
+	private int maxStack = 0;
+	private int maxLocals;
+	private ArrayList<Label> labels = new ArrayList<>();
+
+	public CodeBuilder(int maxLocals) {
+		this.maxLocals = maxLocals;
+	}
+
+	/**
+	 * Emit an instruction without operands.
+	 * 
+	 * @param opcode the instruction
+	 * @param effect the change to the stack depth, in words
+	 */
+	public void op(int opcode, int effect) {
+		u1(opcode);
+		adjust(effect);
+	}
+
+	public void loadDouble(int local) {
+		localOp(DLOAD, local);
+		adjust(2);
+	}
+
+	public void storeDouble(int local) {
+		localOp(DSTORE, local);
+		adjust(-2);
+	}
+
+	public void pushInt(int value) {
+		u1(SIPUSH);
+		u2(value);
+		adjust(1);
+	}
+
+	public void ldcDouble(int poolIndex) {
+		u1(LDC2_W);
+		u2(poolIndex);
+		adjust(2);
+	}
+
+	/**
+	 * Emit an instruction whose operand is a constant pool reference (field or
+	 * method access).
+	 */
+	public void poolOp(int opcode, int poolIndex, int effect) {
+		u1(opcode);
+		u2(poolIndex);
+		adjust(effect);
+	}
+
+	public Label newLabel() {
+		Label label = new Label();
+		labels.add(label);
+		return label;
+	}
+
+	public void bind(Label label) {
+		label.position = length;
+	}
+
+	/**
+	 * Emit a branch to a label.
+	 * 
+	 * @param opcode the branch instruction
+	 * @param effect the change to the stack depth, in words
+	 */
+	public void branch(int opcode, Label label, int effect) {
+		label.branches.add(length);
+		u1(opcode);
+		u2(0); // patched in toByteArray
+		adjust(effect);
+	}
+
+	/**
+	 * Forget the stack depth after an unconditional transfer of control. Code
+	 * that follows is only reached by a branch with an empty stack.
+	 */
+	public void resetDepth() {
+		depth = 0;
+	}
+
+	public int getMaxStack() {
+		return maxStack;
+	}
+
+	public int getMaxLocals() {
+		return maxLocals;
+	}
+
+	public int size() {
+		return length;
+	}
+
+	public byte[] toByteArray() {
+		for (Label label : labels) {
+			for (int at : label.branches) {
+				int offset = label.position - at;
+				if (label.position < 0 || offset != (short) offset)
+					throw new IllegalStateException("Branch out of range");
+				code[at + 1] = (byte) (offset >> 8);
+				code[at + 2] = (byte) offset;
+			}
+		}
+		return Arrays.copyOf(code, length);
+	}
+
+	private void localOp(int opcode, int local) {
+		if (local > 255) {
+			u1(WIDE);
+			u1(opcode);
+			u2(local);
+		} else {
+			u1(opcode);
+			u1(local);
+		}
+	}
+
+	private void adjust(int effect) {
+		depth += effect;
+		maxStack = Math.max(maxStack, depth);
+	}
+
+	private void u1(int b) {
+		if (length == code.length)
+			code = Arrays.copyOf(code, length * 2);
+		code[length++] = (byte) b;
+	}
+
+	private void u2(int s) {
+		u1(s >> 8);
+		u1(s);
+	}
+}
@@ -0,0 +1,17 @@
+package class_jit;
+
+/**
+ * A Jiffy function compiled to JVM bytecode. Implementations are hidden
+ * classes generated by JitCompiler.
+ */
+public interface CompiledCode {
+	/**
+	 * Run the compiled function.
+	 * 
+	 * @param args the actual parameters, all numbers
+	 * @return the numeric result
+	 * @throws Deoptimization if the function reaches code that only the
+	 *                        interpreter can run
+	 */
+	public double invoke(double[] args);
+}
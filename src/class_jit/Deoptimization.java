@@ -0,0 +1,17 @@
+package class_jit;
+
+/**
+ * Thrown by compiled code when it reaches a return that does not produce a
+ * number, or when an operator's result is not exact as a double. Compiled
+ * functions have no side effects, so the caller simply runs the same call
+ * again in the interpreter. There is a single instance without a stack
+ * trace, so throwing it is cheap.
+ */
+@SuppressWarnings("serial")
+public class Deoptimization extends RuntimeException {
+	public static final Deoptimization INSTANCE = new Deoptimization();
+
+	private Deoptimization() {
+		super("deoptimize", null, false, false);
+	}
+}
@@ -0,0 +1,91 @@
+package class_jit;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import class_helper.TreeNode;
+import class_runtime.NumberValue;
+import class_runtime.Value;
+
+/**
+ * FunctionCode holds the compiled code of one function of a program. It is
+ * shared by every execution of the program, on any thread: the first
+ * execution in which the function gets hot compiles it, once, and later
+ * executions run the code from their first call instead of warming up again.
+ */
+public final class FunctionCode {
+	/**
+	 * Deoptimizations after which compiled code is dropped for good.
+	 */
+	public static final int DEOPTIMIZATION_LIMIT = 100;
+
+	private final TreeNode funcNode;
+	private final int arity;
+	private final AtomicBoolean compiled = new AtomicBoolean(); // compilation has been attempted
+	private final AtomicInteger deoptimizations = new AtomicInteger();
+	private volatile CompiledCode code = null;
+
+	/**
+	 * @param funcNode the declaration of the function, already linked
+	 */
+	public FunctionCode(TreeNode funcNode) {
+		this.funcNode = funcNode;
+		this.arity = funcNode.getArity();
+	}
+
+	public String getName() {
+		return funcNode.getName();
+	}
+
+	public boolean isCompiled() {
+		return compiled.get();
+	}
+
+	/**
+	 * Compile the function, unless another execution has done so or is doing
+	 * so. Until the code is ready, calls are interpreted.
+	 * 
+	 * @param funcs Map of function names and corresponding TreeNode
+	 */
+	public void compile(Map<String, TreeNode> funcs) {
+		if (compiled.compareAndSet(false, true))
+			code = JitCompiler.compile(funcNode, funcs);
+	}
+
+	public CompiledCode getCode() {
+		return code;
+	}
+
+	/**
+	 * Run the compiled code.
+	 * 
+	 * @param actualParams the actual parameters
+	 * @return the result, or null if the call has to be interpreted, either
+	 *         because a parameter is not a number that compiled code holds
+	 *         exactly or because the compiled code deoptimized
+	 */
+	public Value invoke(Value[] actualParams) {
+		CompiledCode c = code;
+		if (c == null || actualParams.length != arity)
+			return null;
+		double[] args = new double[arity];
+		for (int i = 0; i < arity; i++) {
+			if (!actualParams[i].isNumber())
+				return null;
+			args[i] = actualParams[i].toDouble();
+			if (!JitRuntime.isExact(args[i]))
+				return null;
+		}
+
+		try {
+			return NumberValue.of(c.invoke(args));
+		} catch (Deoptimization | StackOverflowError e) {
+			// Deep recursion also falls back to the interpreter, which makes
+			// calls in tail position without growing the Java stack
+			if (deoptimizations.incrementAndGet() >= DEOPTIMIZATION_LIMIT)
+				code = null;
+			return null;
+		}
+	}
+}
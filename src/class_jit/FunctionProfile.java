@@ -0,0 +1,57 @@
+package class_jit;
+
+/**
+ * FunctionProfile counts how often a function is called and how many loop
+ * iterations it runs in the interpreter during one execution. Once the
+ * function is hot, it is compiled into the FunctionCode that all executions
+ * of the program share.
+ */
+public class FunctionProfile {
+	/**
+	 * Calls after which a function is compiled.
+	 */
+	public static final int INVOCATION_THRESHOLD = 1000;
+
+	/**
+	 * Loop iterations (back edges) after which a function is compiled on its
+	 * next call.
+	 */
+	public static final int BACK_EDGE_THRESHOLD = 10000;
+
+	private int invocations = 0;
+	private int backEdges = 0;
+	private final FunctionCode code;
+
+	public FunctionProfile(FunctionCode code) {
+		this.code = code;
+	}
+
+	/**
+	 * Count a call in the interpreter.
+	 * 
+	 * @return true if the function just became hot and should be compiled
+	 */
+	public boolean countInvocation() {
+		invocations++;
+		return (invocations >= INVOCATION_THRESHOLD || backEdges >= BACK_EDGE_THRESHOLD) && !code.isCompiled();
+	}
+
+	public void countBackEdge() {
+		backEdges++;
+	}
+
+	/**
+	 * The compiled code of the function, shared with other executions.
+	 */
+	public FunctionCode getCode() {
+		return code;
+	}
+
+	public int getInvocations() {
+		return invocations;
+	}
+
+	public int getBackEdges() {
+		return backEdges;
+	}
+}
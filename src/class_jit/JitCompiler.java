@@ -0,0 +1,343 @@
+package class_jit;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import class_helper.TreeNode;
+
+/**
+ * JitCompiler translates hot Jiffy functions into JVM bytecode and loads them
+ * as hidden classes, so that HotSpot can compile them like any Java method.
+ * 
+ * Only numeric functions are compiled: every parameter and variable is a
+ * double, there is no read or write, and every function they call must be
+ * compilable too. Each function of such a unit becomes a static method of one
+ * hidden class, so calls between them, recursion included, are plain
+ * invokestatic instructions. A return of anything but a number throws a
+ * Deoptimization, and the interpreter runs the call again; this is safe
+ * because compiled functions have no side effects.
+ * 
+ * The interpreter computes integers exactly, in long or BigInteger
+ * arithmetic, and the doubles of compiled code agree with it only below 2^53.
+ * So every operator checks its result with JitRuntime.exact, and a result of
+ * 2^53 or more deoptimizes as well; functions with larger literals are not
+ * compiled.
+ */
+public class JitCompiler {
+	private static final String CLASS_NAME = "class_jit/JitCode";
+	private static final String RUNTIME = "class_jit/JitRuntime";
+	private static final String DEOPTIMIZATION = "class_jit/Deoptimization";
+
+	private Map<String, TreeNode> funcs;
+
+	// Functions of the unit being compiled, in method order; m0 is the entry
+	private ArrayList<TreeNode> unit = new ArrayList<>();
+	private HashMap<String, Integer> methodIndex = new HashMap<>();
+
+	private ClassWriter cw;
+	private CodeBuilder cb;
+
+	// The function being generated and the start of its body, where a call
+	// to itself in tail position jumps instead of recursing
+	private TreeNode current;
+	private CodeBuilder.Label entry;
+
+	private JitCompiler(Map<String, TreeNode> funcs) {
+		this.funcs = funcs;
+	}
+
+	/**
+	 * Compile a function and the functions it calls.
+	 * 
+	 * @param funcNode the declaration of the function, already linked
+	 * @param funcs    HashMap of function names and corresponding TreeNode
+	 * @return the compiled code, or null if the function cannot be compiled
+	 */
+	public static CompiledCode compile(TreeNode funcNode, Map<String, TreeNode> funcs) {
+		try {
+			JitCompiler jc = new JitCompiler(funcs);
+			if (!jc.collect(funcNode))
+				return null;
+			byte[] bytes = jc.generate();
+			if (bytes == null)
+				return null;
+			Class<?> c = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+			return (CompiledCode) c.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+			// Anything the generator gets wrong leaves the function interpreted
+			return null;
+		}
+	}
+
+	/**
+	 * Add a function and, transitively, everything it calls to the unit.
+	 * 
+	 * @return false if one of them cannot be compiled
+	 */
+	private boolean collect(TreeNode funcNode) {
+		methodIndex.put(funcNode.getName(), unit.size());
+		unit.add(funcNode);
+
+		for (int i = 0; i < unit.size(); i++) {
+			TreeNode f = unit.get(i);
+			int arity = f.getArity();
+			BitSet assigned = new BitSet();
+			assigned.set(0, arity);
+			if (!checkStatement(f.getChildren().get(arity), assigned))
+				return false;
+		}
+		return true;
+	}
+
+	// ---- Compilability, with a conservative definite assignment analysis ----
+
+	private boolean checkStatement(TreeNode node, BitSet assigned) {
+		if (node == null) // empty statement
+			return true;
+
+		switch (node.getKind()) {
+		case TreeNode.BLOCK:
+			return checkStatement(node.getLeft(), assigned);
+		case TreeNode.STATEMENT_LIST:
+			for (TreeNode t : node.getChildren())
+				if (!checkStatement(t, assigned))
+					return false;
+			return true;
+		case TreeNode.ASSIGN:
+			if (!checkExpression(node.getRight(), assigned))
+				return false;
+			assigned.set(node.getLeft().getSlot());
+			return true;
+		case TreeNode.WHILE:
+			// assignments in the body may not happen, so they do not count after it
+			return checkCondition(node.getLeft(), assigned)
+					&& checkStatement(node.getRight(), (BitSet) assigned.clone());
+		case TreeNode.IF:
+			List<TreeNode> children = node.getChildren();
+			if (!checkCondition(children.get(0), assigned))
+				return false;
+			BitSet then = (BitSet) assigned.clone();
+			if (!checkStatement(children.get(1), then))
+				return false;
+			if (children.size() > 2) {
+				BitSet otherwise = (BitSet) assigned.clone();
+				if (!checkStatement(children.get(2), otherwise))
+					return false;
+				then.and(otherwise); // assigned on both paths
+				assigned.or(then);
+			}
+			return true;
+		case TreeNode.RETURN:
+			TreeNode result = node.getLeft();
+			return result.getKind() == TreeNode.STRING || checkExpression(result, assigned);
+		}
+		return false; // read and write have side effects
+	}
+
+	private boolean checkCondition(TreeNode node, BitSet assigned) {
+		if (node.getKind() != TreeNode.COMPARISON)
+			return false;
+		return checkExpression(node.getLeft(), assigned) && checkExpression(node.getRight(), assigned);
+	}
+
+	private boolean checkExpression(TreeNode node, BitSet assigned) {
+		switch (node.getKind()) {
+		case TreeNode.CALL:
+			String name = node.getName();
+			TreeNode callee = funcs.get(name);
+			if (callee == null || callee.getArity() != node.getArity())
+				return false;
+			for (TreeNode t : node.getChildren())
+				if (!checkExpression(t, assigned))
+					return false;
+			if (!methodIndex.containsKey(name)) {
+				methodIndex.put(name, unit.size());
+				unit.add(callee);
+			}
+			return true;
+		case TreeNode.IDENTIFIER:
+			return assigned.get(node.getSlot());
+		case TreeNode.NUMBER:
+			return JitRuntime.isExact(node.getValue().toDouble());
+		case TreeNode.OPERATOR:
+			return checkExpression(node.getLeft(), assigned) && checkExpression(node.getRight(), assigned);
+		}
+		return false; // string literal
+	}
+
+	// ---- Code generation ----
+
+	private byte[] generate() {
+		cw = new ClassWriter(CLASS_NAME, "java/lang/Object", "class_jit/CompiledCode");
+
+		cb = new CodeBuilder(1);
+		cb.op(CodeBuilder.ALOAD_0, 1);
+		cb.poolOp(CodeBuilder.INVOKESPECIAL, cw.methodRef("java/lang/Object", "<init>", "()V"), -1);
+		cb.op(CodeBuilder.RETURN, 0);
+		cw.addMethod(ClassWriter.ACC_PUBLIC, "<init>", "()V", cb);
+
+		// invoke(double[]) unpacks the arguments and calls the entry function
+		int arity = unit.get(0).getArity();
+		cb = new CodeBuilder(2);
+		for (int i = 0; i < arity; i++) {
+			cb.op(CodeBuilder.ALOAD_1, 1);
+			cb.pushInt(i);
+			cb.op(CodeBuilder.DALOAD, 0);
+		}
+		cb.poolOp(CodeBuilder.INVOKESTATIC, cw.methodRef(CLASS_NAME, "m0", descriptor(arity)), 2 - 2 * arity);
+		cb.op(CodeBuilder.DRETURN, -2);
+		cw.addMethod(ClassWriter.ACC_PUBLIC, "invoke", "([D)D", cb);
+
+		for (int i = 0; i < unit.size(); i++) {
+			TreeNode f = unit.get(i);
+			cb = new CodeBuilder(2 * f.getFrameSize());
+			current = f;
+			entry = cb.newLabel();
+			cb.bind(entry);
+			generateStatement(f.getChildren().get(f.getArity()));
+			if (cb.size() > Short.MAX_VALUE)
+				return null;
+			cw.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, "m" + i, descriptor(f.getArity()), cb);
+		}
+		return cw.toByteArray();
+	}
+
+	private void generateStatement(TreeNode node) {
+		if (node == null)
+			return;
+
+		switch (node.getKind()) {
+		case TreeNode.BLOCK:
+			generateStatement(node.getLeft());
+			break;
+		case TreeNode.STATEMENT_LIST:
+			for (TreeNode t : node.getChildren())
+				generateStatement(t);
+			break;
+		case TreeNode.ASSIGN:
+			generateExpression(node.getRight());
+			cb.storeDouble(2 * node.getLeft().getSlot());
+			break;
+		case TreeNode.WHILE:
+			CodeBuilder.Label top = cb.newLabel();
+			CodeBuilder.Label exit = cb.newLabel();
+			cb.bind(top);
+			generateCondition(node.getLeft(), exit);
+			generateStatement(node.getRight());
+			cb.branch(CodeBuilder.GOTO, top, 0);
+			cb.bind(exit);
+			break;
+		case TreeNode.IF:
+			List<TreeNode> children = node.getChildren();
+			CodeBuilder.Label otherwise = cb.newLabel();
+			generateCondition(children.get(0), otherwise);
+			generateStatement(children.get(1));
+			if (children.size() > 2) {
+				CodeBuilder.Label end = cb.newLabel();
+				cb.branch(CodeBuilder.GOTO, end, 0);
+				cb.bind(otherwise);
+				generateStatement(children.get(2));
+				cb.bind(end);
+			} else
+				cb.bind(otherwise);
+			break;
+		case TreeNode.RETURN:
+			TreeNode result = node.getLeft();
+			if (result.isTailCall() && funcs.get(result.getName()) == current) {
+				// Assign the arguments to the parameters and start over
+				List<TreeNode> args = result.getChildren();
+				for (TreeNode t : args)
+					generateExpression(t);
+				for (int i = args.size() - 1; i >= 0; i--)
+					cb.storeDouble(2 * i);
+				cb.branch(CodeBuilder.GOTO, entry, 0);
+			} else if (result.getKind() == TreeNode.STRING) {
+				cb.poolOp(CodeBuilder.GETSTATIC,
+						cw.fieldRef(DEOPTIMIZATION, "INSTANCE", "L" + DEOPTIMIZATION + ";"), 1);
+				cb.op(CodeBuilder.ATHROW, -1);
+			} else {
+				generateExpression(result);
+				cb.op(CodeBuilder.DRETURN, -2);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Generate a comparison that branches to target when it is false.
+	 */
+	private void generateCondition(TreeNode node, CodeBuilder.Label target) {
+		generateExpression(node.getLeft());
+		generateExpression(node.getRight());
+
+		// dcmpg and dcmpl differ on NaN; pick the one that makes NaN false
+		char op = node.getOperator();
+		if (op == '<') {
+			cb.op(CodeBuilder.DCMPG, -3);
+			cb.branch(CodeBuilder.IFGE, target, -1);
+		} else if (op == '>') {
+			cb.op(CodeBuilder.DCMPL, -3);
+			cb.branch(CodeBuilder.IFLE, target, -1);
+		} else {
+			cb.op(CodeBuilder.DCMPL, -3);
+			cb.branch(CodeBuilder.IFNE, target, -1);
+		}
+	}
+
+	private void generateExpression(TreeNode node) {
+		switch (node.getKind()) {
+		case TreeNode.CALL:
+			List<TreeNode> params = node.getChildren();
+			for (TreeNode t : params)
+				generateExpression(t);
+			int index = methodIndex.get(node.getName());
+			cb.poolOp(CodeBuilder.INVOKESTATIC, cw.methodRef(CLASS_NAME, "m" + index, descriptor(params.size())),
+					2 - 2 * params.size());
+			break;
+		case TreeNode.IDENTIFIER:
+			cb.loadDouble(2 * node.getSlot());
+			break;
+		case TreeNode.NUMBER:
+			cb.ldcDouble(cw.doubleConstant(node.getValue().toDouble()));
+			break;
+		default:
+			generateExpression(node.getLeft());
+			generateExpression(node.getRight());
+			switch (node.getOperator()) {
+			case '$':
+				cb.poolOp(CodeBuilder.INVOKESTATIC, cw.methodRef(RUNTIME, "max", "(DD)D"), -2);
+				return; // as exact as its operands
+			case '+':
+				cb.op(CodeBuilder.DADD, -2);
+				break;
+			case '-':
+				cb.op(CodeBuilder.DSUB, -2);
+				break;
+			case '*':
+				cb.op(CodeBuilder.DMUL, -2);
+				break;
+			case '/':
+				cb.op(CodeBuilder.DDIV, -2);
+				break;
+			case '%':
+				cb.op(CodeBuilder.DREM, -2);
+				break;
+			case '^':
+				cb.poolOp(CodeBuilder.INVOKESTATIC, cw.methodRef("java/lang/Math", "pow", "(DD)D"), -2);
+				break;
+			}
+			cb.poolOp(CodeBuilder.INVOKESTATIC, cw.methodRef(RUNTIME, "exact", "(D)D"), 0);
+		}
+	}
+
+	private static String descriptor(int arity) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < arity; i++)
+			sb.append('D');
+		return sb.append(")D").toString();
+	}
+}
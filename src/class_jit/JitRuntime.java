@@ -0,0 +1,33 @@
+package class_jit;
+
+import class_runtime.NumberValue;
+
+/**
+ * Helpers called from compiled code for operators that have no single JVM
+ * instruction. HotSpot inlines them.
+ */
+public class JitRuntime {
+	public static double max(double left, double right) {
+		// same as the interpreter: the left value if it is greater, else the right one
+		return left > right ? left : right;
+	}
+
+	/**
+	 * Check the result of an operator. The interpreter computes integers
+	 * exactly, so a result that a double may have rounded, or a -0.0 that the
+	 * interpreter would have as 0, deoptimizes.
+	 */
+	public static double exact(double value) {
+		if (!isExact(value))
+			throw Deoptimization.INSTANCE;
+		return value;
+	}
+
+	/**
+	 * Whether compiled code can hold a value as a double and still give the
+	 * interpreter's results.
+	 */
+	public static boolean isExact(double value) {
+		return NumberValue.isExact(value);
+	}
+}
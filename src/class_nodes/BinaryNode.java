@@ -0,0 +1,218 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.Arithmetic;
+import class_runtime.NumberValue;
+import class_runtime.Value;
+
+/**
+ * An arithmetic operator. The first execution looks at the operand types and
+ * rewrites the node: two numbers that are exact as doubles give a double
+ * variant for the operator, + with a non-number gives string concatenation,
+ * and anything else the generic variant, which computes integers exactly. A
+ * double variant that meets another operand, or whose result is not exact as
+ * a double, rewrites itself to the generic one.
+ */
+public abstract class BinaryNode extends ExpressionNode {
+	protected final String op;
+	protected ExpressionNode left;
+	protected ExpressionNode right;
+
+	protected BinaryNode(String op, ExpressionNode left, ExpressionNode right) {
+		this.op = op;
+		this.left = adopt(left);
+		this.right = adopt(right);
+	}
+
+	public static BinaryNode create(String op, ExpressionNode left, ExpressionNode right) {
+		return new Uninitialized(op, left, right);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		if (left == oldChild)
+			left = (ExpressionNode) newChild;
+		else if (right == oldChild)
+			right = (ExpressionNode) newChild;
+	}
+
+	/**
+	 * Rewrite to the variant suited to the operands and compute the result.
+	 */
+	protected Value specialize(Value l, Value r) {
+		BinaryNode node;
+		if (isDouble(l) && isDouble(r))
+			node = createDouble(op, left, right);
+		else if (op.equals("+") && !(l.isNumber() && r.isNumber()))
+			node = new Concat(op, left, right);
+		else
+			node = new Generic(op, left, right);
+		replace(node);
+		return Arithmetic.apply(op, l, r);
+	}
+
+	private static BinaryNode createDouble(String op, ExpressionNode left, ExpressionNode right) {
+		switch (op.charAt(0)) {
+		case '+':
+			return new Add(op, left, right);
+		case '-':
+			return new Sub(op, left, right);
+		case '*':
+			return new Mul(op, left, right);
+		case '/':
+			return new Div(op, left, right);
+		case '^':
+			return new Pow(op, left, right);
+		case '$':
+			return new Max(op, left, right);
+		default:
+			return new Mod(op, left, right);
+		}
+	}
+
+	static final class Uninitialized extends BinaryNode {
+		Uninitialized(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			Value l = left.execute(frame);
+			Value r = right.execute(frame);
+			return specialize(l, r);
+		}
+	}
+
+	/**
+	 * Base of the double variants. Subclasses only implement the operator.
+	 */
+	static abstract class DoubleOp extends BinaryNode {
+		DoubleOp(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected abstract double compute(double l, double r);
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			try {
+				return NumberValue.of(executeDouble(frame));
+			} catch (UnexpectedResultException e) {
+				return e.getResult();
+			}
+		}
+
+		@Override
+		public double executeDouble(Frame frame) throws JiffyError, UnexpectedResultException {
+			double l;
+			try {
+				l = left.executeDouble(frame);
+			} catch (UnexpectedResultException e) {
+				throw new UnexpectedResultException(specialize(e.getResult(), right.execute(frame)));
+			}
+			double r;
+			try {
+				r = right.executeDouble(frame);
+			} catch (UnexpectedResultException e) {
+				throw new UnexpectedResultException(specialize(NumberValue.of(l), e.getResult()));
+			}
+			double result = compute(l, r);
+			if (NumberValue.isExact(result))
+				return result;
+			replace(new Generic(op, left, right));
+			throw new UnexpectedResultException(Arithmetic.apply(op, NumberValue.of(l), NumberValue.of(r)));
+		}
+	}
+
+	static final class Add extends DoubleOp {
+		Add(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l + r;
+		}
+	}
+
+	static final class Sub extends DoubleOp {
+		Sub(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l - r;
+		}
+	}
+
+	static final class Mul extends DoubleOp {
+		Mul(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l * r;
+		}
+	}
+
+	static final class Div extends DoubleOp {
+		Div(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l / r;
+		}
+	}
+
+	static final class Pow extends DoubleOp {
+		Pow(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return Math.pow(l, r);
+		}
+	}
+
+	static final class Max extends DoubleOp {
+		Max(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l > r ? l : r;
+		}
+	}
+
+	static final class Mod extends DoubleOp {
+		Mod(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		protected double compute(double l, double r) {
+			return l % r;
+		}
+	}
+
+	static final class Concat extends BinaryNode {
+		Concat(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			return Arithmetic.add(left.execute(frame), right.execute(frame));
+		}
+	}
+
+	static final class Generic extends BinaryNode {
+		Generic(String op, ExpressionNode left, ExpressionNode right) {
+			super(op, left, right);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			return Arithmetic.apply(op, left.execute(frame), right.execute(frame));
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+/**
+ * A statement list. Stops at the first statement that returns.
+ */
+public final class BlockNode extends StatementNode {
+	private final StatementNode[] statements;
+
+	public BlockNode(StatementNode[] statements) {
+		this.statements = statements;
+		for (StatementNode s : statements)
+			adopt(s);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		for (int i = 0; i < statements.length; i++)
+			if (statements[i] == oldChild)
+				statements[i] = (StatementNode) newChild;
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		for (StatementNode s : statements)
+			if (s.execute(frame))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,61 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.Value;
+
+/**
+ * Calls a user function. The target is looked up on the first call and cached.
+ * Arguments are evaluated straight into the callee's frame. A call in tail
+ * position is not made here but left to the caller (see ReturnNode).
+ */
+public final class CallNode extends ExpressionNode {
+	private final String funcName;
+	private final NodeProgram program;
+	private final ExpressionNode[] args;
+	private FunctionRoot target;
+
+	public CallNode(String funcName, NodeProgram program, ExpressionNode[] args) {
+		this.funcName = funcName;
+		this.program = program;
+		this.args = args;
+		for (ExpressionNode arg : args)
+			adopt(arg);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		for (int i = 0; i < args.length; i++)
+			if (args[i] == oldChild)
+				args[i] = (ExpressionNode) newChild;
+	}
+
+	@Override
+	public Value execute(Frame frame) throws JiffyError {
+		FunctionRoot f = getTarget();
+		return f.call(bindArguments(f, frame));
+	}
+
+	FunctionRoot getTarget() throws JiffyError {
+		FunctionRoot f = target;
+		if (f == null)
+			f = target = program.getFunction(funcName);
+		if (args.length != f.getArity())
+			throw new JiffyError("Mismatched parameters for fun " + funcName + "()");
+		return f;
+	}
+
+	/**
+	 * Make the frame of a call of f, holding the arguments.
+	 */
+	Frame bindArguments(FunctionRoot f, Frame frame) throws JiffyError {
+		Frame callee = new Frame(f.getFrameSize(), frame);
+		for (int i = 0; i < args.length; i++) {
+			try {
+				callee.setDouble(i, args[i].executeDouble(frame));
+			} catch (UnexpectedResultException e) {
+				callee.set(i, e.getResult());
+			}
+		}
+		return callee;
+	}
+}
@@ -0,0 +1,54 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.Arithmetic;
+import class_runtime.NumberValue;
+
+/**
+ * The boolean expression of a while or if. Both operands must be numbers, so
+ * they are evaluated with executeDouble, and compared by Arithmetic when one
+ * of them is not exact as a double.
+ */
+public final class ConditionNode extends ExecNode {
+	private final char op;
+	private ExpressionNode left;
+	private ExpressionNode right;
+
+	public ConditionNode(String op, ExpressionNode left, ExpressionNode right) {
+		this.op = op.charAt(0);
+		this.left = adopt(left);
+		this.right = adopt(right);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		if (left == oldChild)
+			left = (ExpressionNode) newChild;
+		else if (right == oldChild)
+			right = (ExpressionNode) newChild;
+	}
+
+	public boolean execute(Frame frame) throws JiffyError {
+		double l;
+		try {
+			l = left.executeDouble(frame);
+		} catch (UnexpectedResultException e) {
+			return Arithmetic.compare(op, e.getResult(), right.execute(frame));
+		}
+		double r;
+		try {
+			r = right.executeDouble(frame);
+		} catch (UnexpectedResultException e) {
+			return Arithmetic.compare(op, NumberValue.of(l), e.getResult());
+		}
+
+		switch (op) {
+		case '<':
+			return l < r;
+		case '>':
+			return l > r;
+		default:
+			return Arithmetic.compare(op, l, r);
+		}
+	}
+}
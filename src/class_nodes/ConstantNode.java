@@ -0,0 +1,30 @@
+package class_nodes;
+
+import class_runtime.Value;
+
+/**
+ * A numeric constant or string literal.
+ */
+public final class ConstantNode extends ExpressionNode {
+	private final Value value;
+	private final boolean isNumber; // and exact as a double
+	private final double number;
+
+	public ConstantNode(Value value) {
+		this.value = value;
+		isNumber = isDouble(value);
+		number = isNumber ? value.toDouble() : 0;
+	}
+
+	@Override
+	public Value execute(Frame frame) {
+		return value;
+	}
+
+	@Override
+	public double executeDouble(Frame frame) throws UnexpectedResultException {
+		if (isNumber)
+			return number;
+		throw new UnexpectedResultException(value);
+	}
+}
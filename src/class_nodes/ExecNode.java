@@ -0,0 +1,42 @@
+package class_nodes;
+
+/**
+ * ExecNode is the base of the executable node tree. Each TreeNode of a
+ * function is converted once into an ExecNode with a direct execute method.
+ * Nodes that depend on the types of their operands start uninitialized and
+ * replace themselves in their parent with a specialized variant the first time
+ * they run, and with a generic variant if a specialization stops holding.
+ */
+public abstract class ExecNode {
+	private ExecNode parent;
+
+	/**
+	 * Make this node the parent of a child.
+	 * 
+	 * @return the child
+	 */
+	protected final <T extends ExecNode> T adopt(T child) {
+		if (child != null)
+			((ExecNode) child).parent = this;
+		return child;
+	}
+
+	/**
+	 * Replace this node by another one in its parent.
+	 * 
+	 * @return the new node
+	 */
+	protected final <T extends ExecNode> T replace(T newNode) {
+		parent.replaceChild(this, newNode);
+		((ExecNode) newNode).parent = parent;
+		return newNode;
+	}
+
+	/**
+	 * Swap a child of this node for its replacement. Nodes whose children can
+	 * rewrite themselves must override this method.
+	 */
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		throw new IllegalStateException(getClass().getSimpleName() + " cannot replace its children");
+	}
+}
@@ -0,0 +1,37 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.NumberValue;
+import class_runtime.Value;
+
+/**
+ * An expression node produces a value.
+ */
+public abstract class ExpressionNode extends ExecNode {
+
+	/**
+	 * Evaluate the expression.
+	 */
+	public abstract Value execute(Frame frame) throws JiffyError;
+
+	/**
+	 * Evaluate the expression when a number is expected, without boxing it.
+	 * 
+	 * @throws UnexpectedResultException if the result is not a number that is
+	 *                                   exact as a double; the exception
+	 *                                   carries the actual result
+	 */
+	public double executeDouble(Frame frame) throws JiffyError, UnexpectedResultException {
+		Value v = execute(frame);
+		if (isDouble(v))
+			return v.toDouble();
+		throw new UnexpectedResultException(v);
+	}
+
+	/**
+	 * Whether a value can be computed with as a bare double.
+	 */
+	static boolean isDouble(Value v) {
+		return v.isNumber() && NumberValue.isExact(v.toDouble());
+	}
+}
@@ -0,0 +1,84 @@
+package class_nodes;
+
+import java.util.Arrays;
+
+import class_runtime.InputSource;
+import class_runtime.NumberValue;
+import class_runtime.OutputSink;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * The activation record of one call in the node interpreter. Slots are the
+ * ones assigned by class_interpreter.Linker. A number that is exact as a double
+ * (see NumberValue.isExact) is kept unboxed in numbers, with a null in values;
+ * other numbers, strings and None are kept in values.
+ */
+public final class Frame {
+	/**
+	 * Marks a variable that has not been assigned yet.
+	 */
+	static final Value UNDEFINED = new StringValue("undefined");
+
+	final Value[] values;
+	final double[] numbers;
+
+	/**
+	 * Where read statements take their values from and write statements print
+	 * to, the same for every call of a run.
+	 */
+	final InputSource input;
+	final OutputSink output;
+
+	/**
+	 * The value of the return statement that ended the call.
+	 */
+	Value result;
+
+	/**
+	 * The call in tail position that ended the call, if any, and its frame.
+	 */
+	FunctionRoot tailCallee;
+	Frame tailCallFrame;
+
+	public Frame(int size, InputSource input, OutputSink output) {
+		values = new Value[size];
+		numbers = new double[size];
+		Arrays.fill(values, UNDEFINED);
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Make the frame of a call made in the frame of its caller.
+	 */
+	Frame(int size, Frame caller) {
+		this(size, caller.input, caller.output);
+	}
+
+	Value get(int slot) {
+		Value v = values[slot];
+		return v == null ? NumberValue.of(numbers[slot]) : v;
+	}
+
+	void set(int slot, Value v) {
+		if (v.isNumber() && NumberValue.isExact(v.toDouble())) {
+			values[slot] = null;
+			numbers[slot] = v.toDouble();
+		} else
+			values[slot] = v;
+	}
+
+	void setDouble(int slot, double d) {
+		values[slot] = null;
+		numbers[slot] = d;
+	}
+
+	boolean isDouble(int slot) {
+		return values[slot] == null;
+	}
+
+	boolean isDefined(int slot) {
+		return values[slot] != UNDEFINED;
+	}
+}
@@ -0,0 +1,64 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_runtime.NoneValue;
+import class_runtime.Value;
+
+/**
+ * A user function in the node interpreter. The body is converted from the
+ * parse tree on the first call.
+ */
+public final class FunctionRoot {
+	private final String name;
+	private final TreeNode funcNode;
+	private final NodeProgram program;
+	private final int arity;
+	private final int frameSize;
+	private StatementNode body;
+
+	public FunctionRoot(String name, TreeNode funcNode, NodeProgram program) {
+		this.name = name;
+		this.funcNode = funcNode;
+		this.program = program;
+		arity = funcNode.getArity();
+		frameSize = funcNode.getFrameSize();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getArity() {
+		return arity;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * Run the function in a frame that already holds the actual parameters.
+	 * Calls in tail position are made here, one after the other, so a loop
+	 * written as tail recursion runs in constant Java stack.
+	 * 
+	 * @return the returned value
+	 */
+	public Value call(Frame frame) throws JiffyError {
+		FunctionRoot f = this;
+		while (true) {
+			f.getBody().execute(frame);
+			if (frame.tailCallee == null)
+				return frame.result == null ? NoneValue.NONE : frame.result;
+			f = frame.tailCallee;
+			frame = frame.tailCallFrame;
+		}
+	}
+
+	private StatementNode getBody() throws JiffyError {
+		StatementNode b = body;
+		if (b == null)
+			b = body = new NodeBuilder(program).buildStatement(funcNode.getChildren().get(arity));
+		return b;
+	}
+}
@@ -0,0 +1,24 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+public final class IfNode extends StatementNode {
+	private final ConditionNode condition;
+	private final StatementNode thenPart;
+	private final StatementNode elsePart; // null if there is no else
+
+	public IfNode(ConditionNode condition, StatementNode thenPart, StatementNode elsePart) {
+		this.condition = adopt(condition);
+		this.thenPart = adopt(thenPart);
+		this.elsePart = adopt(elsePart);
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		if (condition.execute(frame))
+			return thenPart.execute(frame);
+		else if (elsePart != null)
+			return elsePart.execute(frame);
+		return false;
+	}
+}
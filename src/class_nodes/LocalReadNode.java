@@ -0,0 +1,76 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.NumberValue;
+import class_runtime.Value;
+
+/**
+ * Reads a variable. Starts uninitialized and specializes to a double read if
+ * the variable holds an unboxed number the first time it is read.
+ */
+public abstract class LocalReadNode extends ExpressionNode {
+	protected final int slot;
+	protected final String name;
+
+	protected LocalReadNode(int slot, String name) {
+		this.slot = slot;
+		this.name = name;
+	}
+
+	public static LocalReadNode create(int slot, String name) {
+		return new Uninitialized(slot, name);
+	}
+
+	protected Value read(Frame frame) throws JiffyError {
+		if (!frame.isDefined(slot))
+			throw new JiffyError("Undefined variable " + name);
+		return frame.get(slot);
+	}
+
+	static final class Uninitialized extends LocalReadNode {
+		Uninitialized(int slot, String name) {
+			super(slot, name);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			Value v = read(frame);
+			if (frame.isDouble(slot))
+				replace(new DoubleRead(slot, name));
+			else
+				replace(new GenericRead(slot, name));
+			return v;
+		}
+	}
+
+	static final class DoubleRead extends LocalReadNode {
+		DoubleRead(int slot, String name) {
+			super(slot, name);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			if (frame.isDouble(slot))
+				return NumberValue.of(frame.numbers[slot]);
+			return replace(new GenericRead(slot, name)).execute(frame);
+		}
+
+		@Override
+		public double executeDouble(Frame frame) throws JiffyError, UnexpectedResultException {
+			if (frame.isDouble(slot))
+				return frame.numbers[slot];
+			throw new UnexpectedResultException(replace(new GenericRead(slot, name)).execute(frame));
+		}
+	}
+
+	static final class GenericRead extends LocalReadNode {
+		GenericRead(int slot, String name) {
+			super(slot, name);
+		}
+
+		@Override
+		public Value execute(Frame frame) throws JiffyError {
+			return read(frame);
+		}
+	}
+}
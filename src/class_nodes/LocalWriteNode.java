@@ -0,0 +1,74 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.Value;
+
+/**
+ * An assignment. Starts uninitialized and specializes to storing an unboxed
+ * double if the first value assigned is a number that is exact as a double.
+ */
+public abstract class LocalWriteNode extends StatementNode {
+	protected final int slot;
+	protected ExpressionNode value;
+
+	protected LocalWriteNode(int slot, ExpressionNode value) {
+		this.slot = slot;
+		this.value = adopt(value);
+	}
+
+	public static LocalWriteNode create(int slot, ExpressionNode value) {
+		return new Uninitialized(slot, value);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		if (value == oldChild)
+			value = (ExpressionNode) newChild;
+	}
+
+	static final class Uninitialized extends LocalWriteNode {
+		Uninitialized(int slot, ExpressionNode value) {
+			super(slot, value);
+		}
+
+		@Override
+		public boolean execute(Frame frame) throws JiffyError {
+			Value v = value.execute(frame);
+			frame.set(slot, v);
+			if (ExpressionNode.isDouble(v))
+				replace(new DoubleWrite(slot, value));
+			else
+				replace(new GenericWrite(slot, value));
+			return false;
+		}
+	}
+
+	static final class DoubleWrite extends LocalWriteNode {
+		DoubleWrite(int slot, ExpressionNode value) {
+			super(slot, value);
+		}
+
+		@Override
+		public boolean execute(Frame frame) throws JiffyError {
+			try {
+				frame.setDouble(slot, value.executeDouble(frame));
+			} catch (UnexpectedResultException e) {
+				replace(new GenericWrite(slot, value));
+				frame.set(slot, e.getResult());
+			}
+			return false;
+		}
+	}
+
+	static final class GenericWrite extends LocalWriteNode {
+		GenericWrite(int slot, ExpressionNode value) {
+			super(slot, value);
+		}
+
+		@Override
+		public boolean execute(Frame frame) throws JiffyError {
+			frame.set(slot, value.execute(frame));
+			return false;
+		}
+	}
+}
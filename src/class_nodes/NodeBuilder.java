@@ -0,0 +1,70 @@
+package class_nodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+
+/**
+ * NodeBuilder converts the linked parse tree of a function into executable
+ * nodes.
+ */
+public class NodeBuilder {
+	private final NodeProgram program;
+
+	public NodeBuilder(NodeProgram program) {
+		this.program = program;
+	}
+
+	public StatementNode buildStatement(TreeNode node) throws JiffyError {
+		switch (node.getKind()) {
+		case TreeNode.BLOCK:
+			return buildStatement(node.getLeft());
+		case TreeNode.STATEMENT_LIST:
+			ArrayList<StatementNode> statements = new ArrayList<>();
+			for (TreeNode t : node.getChildren())
+				if (t != null) // skip empty statements
+					statements.add(buildStatement(t));
+			return new BlockNode(statements.toArray(new StatementNode[0]));
+		case TreeNode.ASSIGN:
+			return LocalWriteNode.create(node.getLeft().getSlot(), buildExpression(node.getRight()));
+		case TreeNode.WRITE:
+			return new WriteNode(buildExpression(node.getLeft()));
+		case TreeNode.READ:
+			return new ReadNode(node.getLeft().getSlot());
+		case TreeNode.WHILE:
+			return new WhileNode(buildCondition(node.getLeft()), buildStatement(node.getRight()));
+		case TreeNode.IF:
+			List<TreeNode> children = node.getChildren();
+			StatementNode elsePart = children.size() > 2 ? buildStatement(children.get(2)) : null;
+			return new IfNode(buildCondition(children.get(0)), buildStatement(children.get(1)), elsePart);
+		case TreeNode.RETURN:
+			return new ReturnNode(buildExpression(node.getLeft()), node.getLeft().isTailCall());
+		}
+		throw new JiffyError("Unexpected statement " + node.getSymbol());
+	}
+
+	private ConditionNode buildCondition(TreeNode node) throws JiffyError {
+		if (node.getChildren().size() < 2)
+			throw new JiffyError("Expected a boolean expression");
+		return new ConditionNode(node.getSymbol(), buildExpression(node.getLeft()), buildExpression(node.getRight()));
+	}
+
+	public ExpressionNode buildExpression(TreeNode node) throws JiffyError {
+		switch (node.getKind()) {
+		case TreeNode.CALL:
+			List<TreeNode> params = node.getChildren();
+			ExpressionNode[] args = new ExpressionNode[params.size()];
+			for (int i = 0; i < args.length; i++)
+				args[i] = buildExpression(params.get(i));
+			return new CallNode(node.getName(), program, args);
+		case TreeNode.NUMBER: // numeric constant or string literal
+		case TreeNode.STRING:
+			return new ConstantNode(node.getValue());
+		case TreeNode.IDENTIFIER:
+			return LocalReadNode.create(node.getSlot(), node.getSymbol());
+		}
+		return BinaryNode.create(node.getSymbol(), buildExpression(node.getLeft()), buildExpression(node.getRight()));
+	}
+}
@@ -0,0 +1,101 @@
+package class_nodes;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import class_helper.JiffyError;
+import class_helper.ParseTree;
+import class_helper.TreeNode;
+import class_interpreter.Linker;
+import class_optimizer.Optimizer;
+import class_parser.JiffyParser;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.LineInput;
+import class_runtime.OutputSink;
+import class_runtime.Value;
+
+/**
+ * NodeInterpreter runs a program on the executable node tree. It sits between
+ * the tree-walking class_interpreter.Interpreter and the bytecode VM: there is
+ * no separate instruction format, but every node is visited through a direct
+ * virtual call instead of a chain of symbol comparisons, and operators
+ * specialize themselves to the types they see.
+ */
+public class NodeInterpreter {
+	private InputSource input = LineInput.stdin();
+	private OutputSink output = BufferedOutput.stdout();
+
+	/**
+	 * Parse and run a program, in the manner of
+	 * class_interpreter.Interpreter.interpret.
+	 * 
+	 * @param programText the program to run
+	 * @param detail      if true, show the tokens and the parse tree
+	 */
+	public static void interpret(String programText, boolean detail) {
+		interpret(new StringReader(programText), detail);
+	}
+
+	/**
+	 * Run a program read from a Reader, such as FileProcessor.openProgramFile.
+	 */
+	public static void interpret(Reader in, boolean detail) {
+		interpret(new JiffyParser(in, detail), detail);
+	}
+
+	/**
+	 * Run a program that has been parsed already, e.g. by JiffyParser.parseFile.
+	 */
+	public static void interpret(JiffyParser jp, boolean detail) {
+		ParseTree pt = jp.getAST();
+		if (pt == null) {
+			System.err.println("\t" + jp.getErrorMessage());
+			return;
+		}
+		HashMap<String, TreeNode> funcs = new Optimizer(pt).getFuncs();
+		Linker.link(funcs);
+
+		if (detail)
+			System.out.println(pt);
+		System.out.println("------------INTERPRETER OUTPUT------------------");
+
+		try {
+			new NodeInterpreter().run(new NodeProgram(funcs));
+		} catch (JiffyError e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Run a program, starting with main.
+	 * 
+	 * @param program the functions of the program, already linked
+	 * @return the value returned by main
+	 * @throws JiffyError if the program fails at run time
+	 */
+	public Value run(NodeProgram program) throws JiffyError {
+		FunctionRoot main = program.getFunction("main");
+		try {
+			return main.call(new Frame(main.getFrameSize(), input, output));
+		} finally {
+			output.flush();
+		}
+	}
+
+	/**
+	 * Take the values of read statements from a source instead of standard
+	 * input.
+	 */
+	public void setInput(InputSource input) {
+		this.input = input;
+	}
+
+	/**
+	 * Send what write statements print to a sink instead of standard output.
+	 */
+	public void setOutput(OutputSink output) {
+		this.output = output;
+	}
+}
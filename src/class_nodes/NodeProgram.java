@@ -0,0 +1,29 @@
+package class_nodes;
+
+import java.util.HashMap;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+
+/**
+ * The functions of a program for the node interpreter.
+ */
+public final class NodeProgram {
+	private final HashMap<String, FunctionRoot> functions = new HashMap<>();
+
+	/**
+	 * @param funcs HashMap of function names and corresponding TreeNode, already
+	 *              linked
+	 */
+	public NodeProgram(HashMap<String, TreeNode> funcs) {
+		for (String name : funcs.keySet())
+			functions.put(name, new FunctionRoot(name, funcs.get(name), this));
+	}
+
+	public FunctionRoot getFunction(String name) throws JiffyError {
+		FunctionRoot f = functions.get(name);
+		if (f == null)
+			throw new JiffyError("Undefined function " + name);
+		return f;
+	}
+}
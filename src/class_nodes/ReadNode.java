@@ -0,0 +1,24 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+import class_runtime.LineInput;
+import class_runtime.Value;
+
+public final class ReadNode extends StatementNode {
+	private final int slot;
+
+	public ReadNode(int slot) {
+		this.slot = slot;
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		if (frame.input == LineInput.stdin())
+			frame.output.flush(); // the console shows what was written before waiting
+		Value value = frame.input.next();
+		if (value == null)
+			throw new JiffyError("No more input for read");
+		frame.set(slot, value);
+		return false;
+	}
+}
@@ -0,0 +1,37 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+/**
+ * A return statement. The value is left in the frame and execute reports that
+ * the function is done, so returning needs no exception. A call in tail
+ * position is left in the frame instead, for FunctionRoot.call to make without
+ * growing the Java stack.
+ */
+public final class ReturnNode extends StatementNode {
+	private ExpressionNode value;
+	private final boolean tailCall;
+
+	public ReturnNode(ExpressionNode value, boolean tailCall) {
+		this.value = adopt(value);
+		this.tailCall = tailCall;
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		if (value == oldChild)
+			value = (ExpressionNode) newChild;
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		if (tailCall) {
+			CallNode call = (CallNode) value;
+			FunctionRoot f = call.getTarget();
+			frame.tailCallee = f;
+			frame.tailCallFrame = call.bindArguments(f, frame);
+		} else
+			frame.result = value.execute(frame);
+		return true;
+	}
+}
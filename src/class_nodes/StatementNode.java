@@ -0,0 +1,17 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+/**
+ * A statement node runs for its effect.
+ */
+public abstract class StatementNode extends ExecNode {
+
+	/**
+	 * Run the statement.
+	 * 
+	 * @return true if a return statement ran; the returned value is in
+	 *         frame.result and the rest of the function must be skipped
+	 */
+	public abstract boolean execute(Frame frame) throws JiffyError;
+}
@@ -0,0 +1,22 @@
+package class_nodes;
+
+import class_runtime.Value;
+
+/**
+ * Thrown by ExpressionNode.executeDouble when the result is not a number. It
+ * is thrown while a node rewrites itself to a more general variant, so it
+ * carries no stack trace.
+ */
+@SuppressWarnings("serial")
+public class UnexpectedResultException extends Exception {
+	private final Value result;
+
+	public UnexpectedResultException(Value result) {
+		super(null, null, false, false);
+		this.result = result;
+	}
+
+	public Value getResult() {
+		return result;
+	}
+}
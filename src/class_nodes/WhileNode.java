@@ -0,0 +1,21 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+public final class WhileNode extends StatementNode {
+	private final ConditionNode condition;
+	private final StatementNode body;
+
+	public WhileNode(ConditionNode condition, StatementNode body) {
+		this.condition = adopt(condition);
+		this.body = adopt(body);
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		while (condition.execute(frame))
+			if (body.execute(frame))
+				return true;
+		return false;
+	}
+}
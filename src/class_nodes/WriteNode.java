@@ -0,0 +1,23 @@
+package class_nodes;
+
+import class_helper.JiffyError;
+
+public final class WriteNode extends StatementNode {
+	private ExpressionNode value;
+
+	public WriteNode(ExpressionNode value) {
+		this.value = adopt(value);
+	}
+
+	@Override
+	protected void replaceChild(ExecNode oldChild, ExecNode newChild) {
+		if (value == oldChild)
+			value = (ExpressionNode) newChild;
+	}
+
+	@Override
+	public boolean execute(Frame frame) throws JiffyError {
+		frame.output.println(value.execute(frame).toString());
+		return false;
+	}
+}
@@ -0,0 +1,113 @@
+package class_optimizer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import class_runtime.Value;
+
+/**
+ * MemoCache remembers the results of a pure function by argument values. It
+ * holds at most capacity results and evicts the least recently used one when
+ * it is full. Hits and misses are counted so that callers can tell whether
+ * memoizing a function pays off.
+ */
+public class MemoCache {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final String name;
+	private final int capacity;
+	private final LinkedHashMap<Arguments, Value> results;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param name     the name of the function, for toString
+	 * @param capacity the largest number of results kept
+	 */
+	public MemoCache(String name, int capacity) {
+		this.name = name;
+		this.capacity = capacity;
+		// access order makes the first entry the least recently used one
+		results = new LinkedHashMap<Arguments, Value>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Arguments, Value> eldest) {
+				return size() > MemoCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Look up the result for some arguments and count a hit or a miss.
+	 * 
+	 * @return the result, or null if it is not in the cache
+	 */
+	public Value get(Value[] args) {
+		Value result = results.get(new Arguments(args));
+		if (result == null)
+			misses++;
+		else
+			hits++;
+		return result;
+	}
+
+	public void put(Value[] args, Value result) {
+		if (capacity > 0)
+			results.put(new Arguments(args), result);
+	}
+
+	public void clear() {
+		results.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return results.size();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public String toString() {
+		return name + ": " + hits + " hits, " + misses + " misses, " + results.size() + "/" + capacity + " entries";
+	}
+
+	/**
+	 * Argument values as a map key.
+	 */
+	private static final class Arguments {
+		private final Value[] values;
+		private final int hash;
+
+		Arguments(Value[] values) {
+			this.values = values;
+			hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Arguments && Arrays.equals(values, ((Arguments) o).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
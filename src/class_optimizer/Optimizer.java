@@ -0,0 +1,299 @@
+package class_optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import class_helper.JiffyError;
+import class_helper.ParseTree;
+import class_helper.TreeNode;
+import class_interpreter.Linker;
+import class_runtime.Arithmetic;
+import class_runtime.BigIntegerValue;
+import class_runtime.NumberValue;
+import class_runtime.Value;
+import class_vm.BytecodeCompiler;
+import class_vm.BytecodeProgram;
+import class_vm.VirtualMachine;
+
+/**
+ * Optimizer rewrites a parsed program before it runs. It works on a copy of
+ * the parse tree, which is left untouched, and repeats three rewrites on each
+ * function until none applies:
+ * 
+ * - constant folding: operators whose operands are constants are replaced by
+ * their result, and if or while statements whose condition is constant are
+ * reduced to the branch that runs;
+ * 
+ * - constant propagation: a variable assigned exactly once, by a top-level
+ * statement of the function and with a constant, is replaced by that constant
+ * in the statements that follow;
+ * 
+ * - partial evaluation: a call to a pure function (see PurityAnalyzer) whose
+ * arguments are all constants is run on the VirtualMachine and replaced by its
+ * result. Calls that fail or run for too long are left alone.
+ */
+public class Optimizer {
+	/**
+	 * Loop iterations and calls allowed for one call evaluated at compile time.
+	 */
+	private static final long EVALUATION_STEPS = 100000;
+	private static final int MAX_PASSES = 10;
+
+	private ParseTree ast;
+	private HashMap<String, TreeNode> funcs = new HashMap<>();
+	private HashSet<String> pure;
+
+	// Program used to evaluate calls to pure functions, compiled on demand
+	private BytecodeProgram program;
+	private boolean compileFailed = false;
+
+	private boolean changed;
+
+	/**
+	 * Optimize a program.
+	 * 
+	 * @param pt the parse tree produced by JiffyParser
+	 */
+	public Optimizer(ParseTree pt) {
+		TreeNode root = pt.getRootNode().copy();
+		for (TreeNode funcNode : root.getChildren())
+			funcs.put(funcNode.getName(), funcNode);
+		pure = PurityAnalyzer.findPureFunctions(funcs);
+
+		for (TreeNode funcNode : funcs.values())
+			optimizeFunction(funcNode);
+		ast = new ParseTree(root);
+	}
+
+	/**
+	 * Get the optimized parse tree.
+	 */
+	public ParseTree getAST() {
+		return ast;
+	}
+
+	/**
+	 * Get the functions of the optimized parse tree, like JiffyParser.getFuncs().
+	 */
+	public HashMap<String, TreeNode> getFuncs() {
+		return funcs;
+	}
+
+	private void optimizeFunction(TreeNode funcNode) {
+		List<TreeNode> children = funcNode.getChildren();
+		TreeNode block = children.get(children.size() - 1);
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			changed = false;
+			foldStatement(block);
+			propagateConstants(funcNode);
+			if (!changed)
+				return;
+		}
+	}
+
+	// ---- Constant folding and partial evaluation ----
+
+	/**
+	 * Fold a statement.
+	 * 
+	 * @return the statement to use instead, or null if it can be dropped
+	 */
+	private TreeNode foldStatement(TreeNode node) {
+		if (node == null)
+			return null;
+
+		List<TreeNode> children = node.getChildren();
+		switch (node.getKind()) {
+		case TreeNode.BLOCK:
+		case TreeNode.STATEMENT_LIST:
+			for (int i = 0; i < children.size(); i++)
+				children.set(i, foldStatement(children.get(i)));
+			break;
+		case TreeNode.ASSIGN:
+		case TreeNode.WRITE:
+		case TreeNode.RETURN:
+			int last = children.size() - 1;
+			children.set(last, foldExpression(children.get(last)));
+			break;
+		case TreeNode.WHILE:
+			if (foldCondition(children.get(0)) == Boolean.FALSE) {
+				changed = true;
+				return null;
+			}
+			children.set(1, foldStatement(children.get(1)));
+			break;
+		case TreeNode.IF:
+			Boolean condition = foldCondition(children.get(0));
+			if (condition != null) {
+				changed = true;
+				if (condition)
+					return foldStatement(children.get(1));
+				return children.size() > 2 ? foldStatement(children.get(2)) : null;
+			}
+			for (int i = 1; i < children.size(); i++)
+				children.set(i, foldStatement(children.get(i)));
+			break;
+		}
+		return node;
+	}
+
+	/**
+	 * Fold both sides of a boolean expression.
+	 * 
+	 * @return the value of the condition if it is constant, otherwise null
+	 */
+	private Boolean foldCondition(TreeNode node) {
+		List<TreeNode> children = node.getChildren();
+		if (children.size() < 2)
+			return null;
+		children.set(0, foldExpression(children.get(0)));
+		children.set(1, foldExpression(children.get(1)));
+
+		TreeNode left = node.getLeft();
+		TreeNode right = node.getRight();
+		if (node.getKind() == TreeNode.COMPARISON && isNumber(left) && isNumber(right))
+			return Arithmetic.compare(node.getOperator(), left.getValue(), right.getValue());
+		return null;
+	}
+
+	private TreeNode foldExpression(TreeNode node) {
+		List<TreeNode> children = node.getChildren();
+
+		if (node.getKind() == TreeNode.CALL) {
+			boolean constantArgs = true;
+			for (int i = 0; i < children.size(); i++) {
+				children.set(i, foldExpression(children.get(i)));
+				constantArgs &= children.get(i).isConstant();
+			}
+			if (constantArgs && pure.contains(node.getName()))
+				return evaluateCall(node, node.getName());
+		} else if (node.getKind() == TreeNode.OPERATOR) {
+			children.set(0, foldExpression(children.get(0)));
+			children.set(1, foldExpression(children.get(1)));
+			TreeNode left = node.getLeft();
+			TreeNode right = node.getRight();
+
+			// Only + is defined on strings
+			boolean numbers = isNumber(left) && isNumber(right);
+			boolean concat = node.getOperator() == '+' && left.isConstant() && right.isConstant();
+			if (numbers || concat) {
+				TreeNode result = literal(Arithmetic.apply(node.getOperator(), left.getValue(), right.getValue()));
+				if (result != null) {
+					changed = true;
+					return result;
+				}
+			}
+		}
+		return node;
+	}
+
+	private TreeNode evaluateCall(TreeNode call, String funcName) {
+		if (program == null && !compileFailed) {
+			try {
+				Linker.link(funcs);
+				program = BytecodeCompiler.compile(funcs);
+			} catch (JiffyError e) {
+				compileFailed = true;
+			}
+		}
+		if (program == null)
+			return call;
+
+		Value[] args = new Value[call.getChildren().size()];
+		for (int i = 0; i < args.length; i++)
+			args[i] = call.getChildren().get(i).getValue();
+
+		try {
+			VirtualMachine vm = new VirtualMachine();
+			vm.setStepLimit(EVALUATION_STEPS);
+			TreeNode result = literal(vm.call(program, funcName, args));
+			if (result == null)
+				return call;
+			changed = true;
+			return result;
+		} catch (JiffyError | RuntimeException | StackOverflowError e) {
+			// Leave the call for run time, where it will fail or loop as written
+			return call;
+		}
+	}
+
+	// ---- Constant propagation ----
+
+	private void propagateConstants(TreeNode funcNode) {
+		List<TreeNode> children = funcNode.getChildren();
+		TreeNode block = children.get(children.size() - 1);
+
+		// Parameters and variables assigned by read or more than once are not constant
+		HashMap<String, Integer> assignments = new HashMap<>();
+		for (int i = 0; i < children.size() - 1; i++)
+			assignments.put(children.get(i).getSymbol(), 2);
+		countAssignments(block, assignments);
+
+		List<TreeNode> statements = block.getLeft().getChildren();
+		for (int i = 0; i < statements.size(); i++) {
+			TreeNode s = statements.get(i);
+			if (s == null || s.getKind() != TreeNode.ASSIGN || !s.getRight().isConstant())
+				continue;
+			String name = s.getLeft().getSymbol();
+			if (assignments.get(name) != 1)
+				continue;
+			for (int j = i + 1; j < statements.size(); j++)
+				statements.set(j, replaceUses(statements.get(j), name, s.getRight()));
+		}
+	}
+
+	private void countAssignments(TreeNode node, HashMap<String, Integer> assignments) {
+		if (node == null)
+			return;
+		if (node.getKind() == TreeNode.ASSIGN || node.getKind() == TreeNode.READ) {
+			String name = node.getLeft().getSymbol();
+			assignments.merge(name, 1, Integer::sum);
+		}
+		for (TreeNode child : node.getChildren())
+			countAssignments(child, assignments);
+	}
+
+	private TreeNode replaceUses(TreeNode node, String name, TreeNode constant) {
+		if (node == null)
+			return null;
+		if (node.isLeaf()) {
+			if (node.getKind() == TreeNode.IDENTIFIER && node.getSymbol().equals(name)) {
+				changed = true;
+				return new TreeNode(constant.getKind(), constant.getSymbol());
+			}
+			return node;
+		}
+		List<TreeNode> children = node.getChildren();
+		for (int i = 0; i < children.size(); i++)
+			children.set(i, replaceUses(children.get(i), name, constant));
+		return node;
+	}
+
+	// ---- Literals ----
+
+	private static boolean isNumber(TreeNode node) {
+		return node.getKind() == TreeNode.NUMBER;
+	}
+
+	/**
+	 * Make a leaf for a value, written the way JiffyParser writes literals.
+	 * 
+	 * @return the leaf, or null if the value has no literal form
+	 */
+	private static TreeNode literal(Value v) {
+		// Integers from 2^53 are written in full digits, so they stay exact
+		if (BigIntegerValue.isInteger(v) && !NumberValue.isExact(v.toDouble()))
+			return new TreeNode(TreeNode.NUMBER, v.toString());
+		if (v.isNumber()) {
+			double d = v.toDouble();
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				return null;
+			return new TreeNode(TreeNode.NUMBER, Double.toString(d));
+		}
+		String text = v.toString();
+		if (text.indexOf('"') >= 0)
+			return null;
+		return new TreeNode(TreeNode.STRING, "\"" + text + "\"");
+	}
+}
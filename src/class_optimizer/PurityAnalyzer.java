@@ -0,0 +1,67 @@
+package class_optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import class_helper.TreeNode;
+
+/**
+ * PurityAnalyzer finds the pure functions of a program. A function is pure if
+ * its body contains no read, no write and no call to a function that is not
+ * pure. Calls to unknown functions make a function impure. Recursion is
+ * allowed: functions are assumed pure until a reason to the contrary is found.
+ */
+public class PurityAnalyzer {
+
+	/**
+	 * @param funcs HashMap of function names and corresponding TreeNode
+	 * @return the names of the pure functions
+	 */
+	public static HashSet<String> findPureFunctions(HashMap<String, TreeNode> funcs) {
+		// Start with every function that does no I/O itself
+		HashMap<String, HashSet<String>> callees = new HashMap<>();
+		HashSet<String> pure = new HashSet<>();
+		for (String name : funcs.keySet()) {
+			HashSet<String> called = new HashSet<>();
+			if (!hasInputOutput(funcs.get(name), called)) {
+				pure.add(name);
+				callees.put(name, called);
+			}
+		}
+
+		// Then drop the functions that call an impure one until nothing changes
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (String name : new HashSet<>(pure)) {
+				for (String callee : callees.get(name)) {
+					if (!pure.contains(callee)) {
+						pure.remove(name);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return pure;
+	}
+
+	/**
+	 * Report whether a subtree contains read or write, and collect the names of
+	 * the functions it calls.
+	 */
+	private static boolean hasInputOutput(TreeNode node, HashSet<String> called) {
+		if (node == null)
+			return false;
+
+		if (node.getKind() == TreeNode.READ || node.getKind() == TreeNode.WRITE)
+			return true;
+		if (node.getKind() == TreeNode.CALL)
+			called.add(node.getName());
+
+		for (TreeNode child : node.getChildren())
+			if (hasInputOutput(child, called))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,271 @@
+package class_parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import class_helper.ParseTree;
+import class_helper.TreeNode;
+
+/**
+ * AstCache keeps parsed programs in a compact binary form, the .jifc format,
+ * so that a program that has not changed since its last run is loaded instead
+ * of lexed and parsed. A cache file holds the SHA-256 hash of the source it was
+ * made from and the format version; if either does not match, the file is
+ * ignored and written again.
+ * 
+ * Cache files are stored next to the source (prog.jif gives prog.jifc), or in
+ * the directory named by the system property jiffy.cache.dir, where they are
+ * named by the source hash.
+ * 
+ * Layout: int magic "JIFC", int FORMAT_VERSION and 32 bytes of source hash,
+ * then these counts and indexes as varints (7 bits per byte, low bits first):
+ * 
+ * string count, then for each string its UTF-8 length and bytes;
+ * 
+ * node count, then every node in preorder: its kind plus one (0 for an empty
+ * statement, which has nothing else), its symbol's string index, its source
+ * line (0 for most expressions) and its child count;
+ * 
+ * function count, then for each function its name's string index and its node
+ * index.
+ */
+public class AstCache {
+	public static final int MAGIC = 0x4A494643; // "JIFC"
+	public static final int FORMAT_VERSION = 4;
+
+	private static boolean enabled = true;
+
+	public static void setEnabled(boolean enabled) {
+		AstCache.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Compute the key of a source file.
+	 */
+	public static byte[] hash(File source) throws IOException {
+		try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Get the cache file of a source file.
+	 */
+	public static File cacheFile(File source, byte[] hash) {
+		String dir = System.getProperty("jiffy.cache.dir");
+		if (dir == null)
+			return new File(source.getPath() + "c");
+
+		StringBuilder name = new StringBuilder();
+		for (byte b : hash)
+			name.append(String.format("%02x", b));
+		return new File(dir, name.append(".jifc").toString());
+	}
+
+	/**
+	 * Load a parsed program.
+	 * 
+	 * @param cacheFile the cache file
+	 * @param hash      the hash of the current source
+	 * @param funcs     filled with the functions of the program
+	 * @return the parse tree, or null if the cache file is missing, stale or
+	 *         unreadable
+	 */
+	public static ParseTree load(File cacheFile, byte[] hash, HashMap<String, TreeNode> funcs) {
+		if (!cacheFile.isFile())
+			return null;
+
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION)
+				return null;
+			byte[] key = new byte[hash.length];
+			in.get(key);
+			if (!Arrays.equals(key, hash))
+				return null;
+
+			String[] strings = new String[readVarint(in)];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[readVarint(in)];
+				in.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			TreeNode[] nodes = new TreeNode[readVarint(in)];
+			int[] next = { 0 };
+			TreeNode root = readNode(in, strings, nodes, next);
+
+			int count = readVarint(in);
+			for (int i = 0; i < count; i++) {
+				String name = strings[readVarint(in)];
+				funcs.put(name, nodes[readVarint(in)]);
+			}
+			return new ParseTree(root);
+		} catch (IOException | RuntimeException e) {
+			// A truncated or corrupt file is a miss; it is written again
+			funcs.clear();
+			return null;
+		}
+	}
+
+	private static TreeNode readNode(ByteBuffer in, String[] strings, TreeNode[] nodes, int[] next) {
+		int index = next[0]++;
+		int kind = readVarint(in) - 1;
+		if (kind < 0)
+			return null;
+
+		TreeNode node = new TreeNode(kind, strings[readVarint(in)]);
+		node.setLine(readVarint(in));
+		nodes[index] = node;
+		int children = readVarint(in);
+		for (int i = 0; i < children; i++)
+			node.add(readNode(in, strings, nodes, next));
+		return node;
+	}
+
+	private static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Store a parsed program. Failures are ignored: the program is simply
+	 * parsed again next time.
+	 */
+	public static void store(File cacheFile, byte[] hash, ParseTree pt, HashMap<String, TreeNode> funcs) {
+		try {
+			// Nodes are written first, since the string table is complete only
+			// after all symbols have been seen
+			Encoder nodes = new Encoder();
+			nodes.writeNode(pt.getRootNode());
+
+			Encoder out = new Encoder();
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.write(hash, 0, hash.length);
+
+			ArrayList<String> strings = nodes.strings;
+			for (String name : funcs.keySet())
+				nodes.intern(name);
+			out.writeVarint(strings.size());
+			for (String s : strings) {
+				byte[] b = s.getBytes(StandardCharsets.UTF_8);
+				out.writeVarint(b.length);
+				out.write(b, 0, b.length);
+			}
+
+			out.writeVarint(nodes.nodeCount);
+			nodes.writeTo(out);
+
+			out.writeVarint(funcs.size());
+			for (Map.Entry<String, TreeNode> e : funcs.entrySet()) {
+				out.writeVarint(nodes.intern(e.getKey()));
+				out.writeVarint(nodes.functionIndex.get(e.getValue()));
+			}
+
+			// Write a temporary file of its own and move it in place, so that a
+			// run never sees half a cache file, even while other threads or
+			// processes store the same program
+			Path target = cacheFile.toPath().toAbsolutePath();
+			Files.createDirectories(target.getParent());
+			Path temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+			try {
+				try (OutputStream file = Files.newOutputStream(temp)) {
+					out.writeTo(file);
+				}
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException | RuntimeException e) {
+			// not cached
+		}
+	}
+
+	/**
+	 * A byte buffer with varint output, and the string table and function node
+	 * indexes of the nodes written to it.
+	 */
+	private static class Encoder extends ByteArrayOutputStream {
+		final HashMap<String, Integer> stringIndex = new HashMap<>();
+		final ArrayList<String> strings = new ArrayList<>();
+		final IdentityHashMap<TreeNode, Integer> functionIndex = new IdentityHashMap<>();
+		int nodeCount = 0;
+
+		Encoder() {
+			super(1 << 16);
+		}
+
+		void writeNode(TreeNode node) {
+			int index = nodeCount++;
+			if (node == null) {
+				writeVarint(0);
+				return;
+			}
+			if (node.getKind() == TreeNode.FUNCTION)
+				functionIndex.put(node, index);
+
+			writeVarint(node.getKind() + 1);
+			writeVarint(intern(node.getSymbol()));
+			writeVarint(node.getLine());
+			writeVarint(node.getChildren().size());
+			for (TreeNode child : node.getChildren())
+				writeNode(child);
+		}
+
+		int intern(String s) {
+			Integer index = stringIndex.get(s);
+			if (index == null) {
+				index = strings.size();
+				stringIndex.put(s, index);
+				strings.add(s);
+			}
+			return index;
+		}
+
+		void writeInt(int v) {
+			write(v >>> 24);
+			write(v >>> 16);
+			write(v >>> 8);
+			write(v);
+		}
+
+		void writeVarint(int v) {
+			while ((v & ~0x7F) != 0) {
+				write((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			write(v);
+		}
+	}
+}
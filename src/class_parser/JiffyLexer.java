@@ -1,34 +1,94 @@
 package class_parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import class_events.LexEvent;
 import class_helper.JiffyError;
 
 /**
  * JiffyLexer provides a simple scanner for a JiffyParser. We hold the string
  * being parsed, and JiffyParser uses us to read the string as a sequence of
  * tokens.
+ * 
+ * The program is read from a Reader in chunks and scanned character by
+ * character as the parser asks for tokens. Comments and white space are
+ * skipped as they are met and tokens are stored in a compact int array, so the
+ * parser can look ahead any number of tokens. Only the text from the current
+ * token on and the tokens not consumed yet are kept, so a large program is
+ * never held in memory as a whole. No String is made for a token until the
+ * parser asks for its text.
  */
 public class JiffyLexer {
 	/**
-	 * The program text being parsed, held in a StringTokenizer.
+	 * The program text being parsed. text holds the characters from offset
+	 * textStart of the program on; textLength of them are valid. Offsets below
+	 * are offsets in the program, not in text.
+	 */
+	private Reader in; // null once the whole program has been read
+	private char[] text = new char[8192];
+	private int textStart = 0;
+	private int textLength = 0;
+	private IOException readError;
+
+	/**
+	 * Scanner position: the offset of the next character to scan and its line.
 	 */
-	private java.util.StringTokenizer tokens;
+	private int position = 0;
+	private int line = 1;
+	private int scanStart = 0; // offset where the token being scanned may start
+	private boolean scanned = false; // true once the last token has been scanned
 
 	/**
-	 * The current token.
+	 * The tokens scanned so far and not consumed yet, TOKEN_FIELDS ints per
+	 * token: kind, start offset, length and line number. The last token of the
+	 * program is always an EOLN_TOKEN or, if the text has a lexical error, an
+	 * ERROR_TOKEN.
 	 */
-	private int tokenChar;
+	private static final int TOKEN_FIELDS = 4;
+	private static final int COMPACT_TOKENS = 1024;
+	private int[] tokens = new int[64 * TOKEN_FIELDS];
+	private int tokenTotal = 0;
 
-	private double tokenNum;
-	private String tokenString;
+	/**
+	 * The values of the number tokens, by token index.
+	 */
+	private double[] numbers = new double[64];
 
-	private static int tokenCount = 1;
+	/**
+	 * The message of the ERROR_TOKEN, if any.
+	 */
+	private String errorMessage;
+
+	/**
+	 * The index of the current token.
+	 */
+	private int current = -1;
+
+	private int tokenCount = 1;
 	private boolean detail = false;
 
 	private int lineNumber = 1;
 
 	/**
-	 * Non-character values for tokenChar. By choosing negative values we are
-	 * certain not to collide with any char values stored in the int tokenChar.
+	 * Tokens are scanned this many at a time, so that the scan can be timed
+	 * for the LexEvent without reading the clock for every token.
+	 */
+	private static final int SCAN_AHEAD = 32;
+
+	/**
+	 * The LexEvent being recorded, or null if Flight Recorder does not record
+	 * it, and what it reports.
+	 */
+	private LexEvent event;
+	private long scanNanos = 0;
+	private long scannedTokens = 0;
+
+	/**
+	 * Non-character values for token kinds. By choosing negative values we are
+	 * certain not to collide with any char values stored in the int kinds.
 	 */
 	public static final int NUMBER_TOKEN = -1;
 	public static final int IDENTIFIER_TOKEN = -2;
@@ -41,8 +101,9 @@ public class JiffyLexer {
 	public static final int EOLN_TOKEN = -9;
 	public static final int FUN_TOKEN = -10;
 	public static final int RETURN_TOKEN = -11;
+	public static final int ERROR_TOKEN = -12;
 	
-	public static String [] tokenTypes = {"RETURN", "FUN", "EOLN", "ELSE", "IF", "WHILE","READ"
+	public static String [] tokenTypes = {"ERROR", "RETURN", "FUN", "EOLN", "ELSE", "IF", "WHILE","READ"
 			, "WRITE", "STRING", "IDENTIFIER", "NUMBER"}; 
 
 	/**
@@ -50,156 +111,285 @@ public class JiffyLexer {
 	 * tokenized.
 	 * 
 	 * @param s the String to be tokenized
-	 * @throws JiffyError
+	 * @throws JiffyError if the first token is not valid
 	 */
 	public JiffyLexer(String s, boolean detail) throws JiffyError {
+		this(new StringReader(s), detail);
+	}
 
-		// We use a StringTokenizer to tokenize the string.
-		// Delimiters are shown below.
-		// By making the third parameter true,
-		// those delimiters are also returned as tokens.
+	/**
+	 * Constructor for a JiffyLexer that reads the program text from a Reader.
+	 * The Reader is closed once the whole text has been read.
+	 * 
+	 * @param in the program text to be tokenized
+	 * @throws JiffyError if the first token is not valid
+	 */
+	public JiffyLexer(Reader in, boolean detail) throws JiffyError {
+		this(in, detail, 1);
+	}
 
+	/**
+	 * Constructor for a JiffyLexer of part of a program, whose first line is a
+	 * later line of the program.
+	 */
+	JiffyLexer(Reader in, boolean detail, int firstLine) throws JiffyError {
+		this.in = in;
 		this.detail = detail;
+		line = firstLine;
+		lineNumber = firstLine;
+		LexEvent lexEvent = new LexEvent();
+		if (lexEvent.isEnabled()) {
+			event = lexEvent;
+			event.begin();
+		}
 
-		s = removeComments(s);
-
-		tokens = new java.util.StringTokenizer(s, " \t\n\r{};+-*/()=\"<>,?^$%", true); //edited in class
-		
 		// Start by advancing to the first token. Note that
-		// this may get an error, which would set our
-		// errorMessage instead of setting tokenChar.
+		// this may get an error if the first token is bad.
 		advance();
 	}
 
-	private String removeComments(String s) {
-		// The parameter s is a string representing the Jiffy source code
-		// Comments start with commentChar and go through end of line
-		// Remove all comments from the code and
-		// RETURN the resulting, uncommented, code
-		
-		StringBuilder result = new StringBuilder();
-
-        String[] lines = s.split("\n");
-        for (String line : lines) {
-            int commentIndex = line.indexOf("#");
-            if (commentIndex != -1) {
-                result.append(line.substring(0, commentIndex)).append("\n");
-            } else {
-                result.append(line).append("\n");
-            }
-        }
-
-        return result.toString();
-    }
-
-
 	/**
-	 * Advance to the next token. We don't return anything; the caller must use
-	 * nextToken() to see what that token is.
-	 * 
-	 * @throws JiffyError
+	 * Scan one more token.
 	 */
-	public void advance() throws JiffyError {
-
-		// White space is returned as a token by our
-		// StringTokenizer, but we will loop until something
-		// other than white space has been found.
-
+	private void scanToken() {
 		while (true) {
-
-			// If we're at the end, make it an EOLN_TOKEN.
-			if (!tokens.hasMoreTokens()) {
-				tokenChar = EOLN_TOKEN;
+			scanStart = position;
+			int c = charAt(position);
+			if (c < 0) {
+				if (readError != null)
+					addError("Cannot read the program: " + readError.getMessage(), position, line);
+				else
+					addToken(EOLN_TOKEN, position, 0, line);
+				scanned = true;
 				return;
 			}
 
-			// Get a token
-			// Use the first character to figure out whether and what kind of token we have
-			String s = tokens.nextToken();
-			char c1 = s.charAt(0);
+			if (c == '\n') {
+				line++;
+				position++;
+			} else if (c == ' ' || c == '\t' || c == '\r') {
+				position++;
+			} else if (c == '#') { // comments go through end of line
+				while ((c = charAt(position)) >= 0 && c != '\n')
+					position++;
+			} else if (c == '"') { // string literal, quotes included
+				int start = position;
+				int startLine = line;
+				position++;
+				while ((c = charAt(position)) >= 0 && c != '"') {
+					if (c == '\n')
+						line++;
+					position++;
+				}
+				if (c < 0) {
+					addError("Bad string literal", start, startLine);
+					return;
+				}
+				position++;
+				addToken(STRING_TOKEN, start, position - start, startLine);
+				return;
+			} else if (isDelimiter((char) c)) {
+				addToken(c, position, 1, line);
+				position++;
+				return;
+			} else {
+				// A word runs up to the next delimiter or comment
+				int start = position;
+				while ((c = charAt(position)) >= 0 && !isDelimiter((char) c) && c != '#')
+					position++;
+
+				int length = position - start;
+				char first = text[start - textStart];
+				if (Character.isDigit(first)) {
+					try {
+						double d = Double.parseDouble(new String(text, start - textStart, length));
+						int index = addToken(NUMBER_TOKEN, start, length, line); // may grow numbers
+						numbers[index] = d;
+					} catch (NumberFormatException x) {
+						addError("Illegal format for a number", start, line);
+					}
+					return;
+				} else if (Character.isLetter(first)) {
+					addToken(getKeywordToken(start, length), start, length, line);
+					return;
+				} else if (!Character.isWhitespace(first)) {
+					// Any other character that is not white space is
+					// considered a token by itself.
+					addToken(first, start, 1, line);
+					return;
+				}
+			}
+		}
+	}
 
-			if (c1 == '\n')
-				lineNumber++;
+	/**
+	 * Get the character at an offset of the program, reading more text if
+	 * needed.
+	 * 
+	 * @return the character, or -1 past the end of the program
+	 */
+	private int charAt(int offset) {
+		if (offset >= textStart + textLength && !read(offset))
+			return -1;
+		return text[offset - textStart];
+	}
 
-			if (c1 != ' ' && detail) {
-				System.out.println("token " + tokenCount + " is " + s);
-				tokenCount++;
-			}
+	/**
+	 * Read text until the character at offset is in the buffer. The text of
+	 * the current token is kept, since the parser may still ask for it; the
+	 * text before it is dropped.
+	 * 
+	 * @return false if the program ends before offset
+	 */
+	private boolean read(int offset) {
+		if (in == null)
+			return false;
 
-			if (Character.isDigit(c1)) {
-				getNumberToken(s);
-				return;
-			} else if (c1 == '"') { // string literal
-				getStringLiteralToken();
-				return;
-			} else if (Character.isLetter(c1)) {
-				getKeywordToken(s);
-				return;
-			} else if (!Character.isWhitespace(c1)) {
-				// Any other single character that is not
-				// white space is considered a token.
-				tokenChar = c1;
-				tokenString = Character.toString(c1);
-				return;
+		try {
+			while (offset >= textStart + textLength) {
+				if (textLength == text.length) {
+					int keep = current >= 0 ? tokens[current * TOKEN_FIELDS + 1] : scanStart;
+					int drop = keep - textStart;
+					if (drop >= text.length / 2) {
+						System.arraycopy(text, drop, text, 0, textLength - drop);
+						textStart += drop;
+						textLength -= drop;
+					} else
+						text = Arrays.copyOf(text, text.length * 2);
+				}
+
+				int n = in.read(text, textLength, text.length - textLength);
+				if (n < 0) {
+					in.close();
+					in = null;
+					return false;
+				}
+				textLength += n;
 			}
+			return true;
+		} catch (IOException e) {
+			readError = e;
+			in = null;
+			return false;
 		}
 	}
 
-	private void getKeywordToken(String s) {
-		tokenString = s;
+	private static boolean isDelimiter(char c) {
+		switch (c) {
+		case ' ': case '\t': case '\n': case '\r':
+		case '{': case '}': case ';': case '+': case '-': case '*': case '/': case '(': case ')':
+		case '=': case '"': case '<': case '>': case ',': case '?': case '^': case '$': case '%':
+			return true;
+		default:
+			return false;
+		}
+	}
 
+	private int getKeywordToken(int start, int length) {
 		// Tag token
-		if (s.equals("write"))
-			tokenChar = WRITE_TOKEN;
-		else if (s.equals("read"))
-			tokenChar = READ_TOKEN;
-		else if (s.equals("while"))
-			tokenChar = WHILE_TOKEN;
-		else if (s.equals("if"))
-			tokenChar = IF_TOKEN;
-		else if (s.equals("else"))
-			tokenChar = ELSE_TOKEN;
-		else if (s.equals("fun"))
-			tokenChar = FUN_TOKEN;
-		else if (s.equals("return"))
-			tokenChar = RETURN_TOKEN;
+		if (isWord(start, length, "write"))
+			return WRITE_TOKEN;
+		else if (isWord(start, length, "read"))
+			return READ_TOKEN;
+		else if (isWord(start, length, "while"))
+			return WHILE_TOKEN;
+		else if (isWord(start, length, "if"))
+			return IF_TOKEN;
+		else if (isWord(start, length, "else"))
+			return ELSE_TOKEN;
+		else if (isWord(start, length, "fun"))
+			return FUN_TOKEN;
+		else if (isWord(start, length, "return"))
+			return RETURN_TOKEN;
 		else // default - if it is none of the keywords, treat it as an identifier
-			tokenChar = IDENTIFIER_TOKEN;
+			return IDENTIFIER_TOKEN;
 	}
 
-	private void getStringLiteralToken() throws JiffyError {
-		try {
-			tokenString = getStringLiteral();
-			tokenChar = STRING_TOKEN;
-		} catch (JiffyError c) {
-			throw c;
-		}
+	private boolean isWord(int start, int length, String keyword) {
+		if (length != keyword.length())
+			return false;
+		for (int i = 0; i < length; i++)
+			if (text[start - textStart + i] != keyword.charAt(i))
+				return false;
+		return true;
 	}
 
-	private void getNumberToken(String s) throws JiffyError {
-		try {
-			tokenNum = Double.valueOf(s).doubleValue();
-			tokenString = s;
-			tokenChar = NUMBER_TOKEN;
-		} catch (NumberFormatException x) {
-			throw new JiffyError("Illegal format for a number");
+	/**
+	 * Append a token.
+	 * 
+	 * @return the index of the token
+	 */
+	private int addToken(int kind, int start, int length, int line) {
+		if ((tokenTotal + 1) * TOKEN_FIELDS > tokens.length)
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+		if (tokenTotal == numbers.length)
+			numbers = Arrays.copyOf(numbers, numbers.length * 2);
+
+		int at = tokenTotal * TOKEN_FIELDS;
+		tokens[at] = kind;
+		tokens[at + 1] = start;
+		tokens[at + 2] = length;
+		tokens[at + 3] = line;
+		scannedTokens++;
+		return tokenTotal++;
+	}
+
+	private void addError(String message, int start, int line) {
+		errorMessage = message;
+		addToken(ERROR_TOKEN, start, 0, line);
+		scanned = true;
+	}
+
+	/**
+	 * Scan until the token at index exists or the program ends.
+	 * 
+	 * @return the index of that token, or of the last token of the program
+	 */
+	private int getToken(int index) {
+		if (index >= tokenTotal && !scanned) {
+			long start = event == null ? 0 : System.nanoTime();
+			while (index + SCAN_AHEAD >= tokenTotal && !scanned)
+				scanToken();
+			if (event != null)
+				scanNanos += System.nanoTime() - start;
 		}
+		return Math.min(index, tokenTotal - 1);
 	}
 
-	private String getStringLiteral() throws JiffyError {
-		String result = "\"";
-		String s = "";
-		char c = ' ';
-		do {
-			s = tokens.nextToken();
-			result += s;
-			c = s.charAt(0);
-		} while (c != '"');
+	/**
+	 * Forget the tokens already consumed.
+	 */
+	private void compactTokens() {
+		int keep = tokenTotal - current;
+		System.arraycopy(tokens, current * TOKEN_FIELDS, tokens, 0, keep * TOKEN_FIELDS);
+		System.arraycopy(numbers, current, numbers, 0, keep);
+		tokenTotal = keep;
+		current = 0;
+	}
 
-		if (c == '"')
-			return result;
-		else
-			throw new JiffyError("Bad string literal");
+	/**
+	 * Advance to the next token. We don't return anything; the caller must use
+	 * nextToken() to see what that token is. At the end of the text we stay on
+	 * the EOLN_TOKEN.
+	 * 
+	 * @throws JiffyError if the next token is not valid
+	 */
+	public void advance() throws JiffyError {
+		int next = getToken(current + 1);
+		if (next == current) // at the end
+			return;
+
+		lineNumber = tokens[next * TOKEN_FIELDS + 3];
+		if (tokens[next * TOKEN_FIELDS] == ERROR_TOKEN)
+			throw new JiffyError(errorMessage);
+		current = next;
+		if (current >= COMPACT_TOKENS)
+			compactTokens();
+
+		if (detail && nextToken() != EOLN_TOKEN) {
+			System.out.println("token " + tokenCount + " is " + getTokenString());
+			tokenCount++;
+		}
 	}
 
 	/**
@@ -209,17 +399,19 @@ public class JiffyLexer {
 	 * @return the double value of the number
 	 */
 	public double getNum() {
-		return tokenNum;
+		return numbers[current];
 	}
 
 	/**
-	 * Return the value of a identifier token. This should only be called when
-	 * nextToken() reports a IDENTIFIER_TOKEN.
+	 * Return the text of the current token. This should only be called when
+	 * nextToken() reports a IDENTIFIER_TOKEN, a STRING_TOKEN (quotes included),
+	 * a NUMBER_TOKEN or a keyword.
 	 *
 	 * @return the string value of the token
 	 */
 	public String getTokenString() {
-		return tokenString;
+		int at = current * TOKEN_FIELDS;
+		return new String(text, tokens[at + 1] - textStart, tokens[at + 2]);
 	}
 
 	/**
@@ -229,11 +421,117 @@ public class JiffyLexer {
 	 * @return the next token as an int
 	 */
 	public int nextToken() {
-		return tokenChar;
+		return tokens[current * TOKEN_FIELDS];
+	}
+
+	/**
+	 * Look ahead without advancing. peekToken(0) is nextToken().
+	 * 
+	 * @param ahead how many tokens past the next one to look
+	 * @return the kind of that token, EOLN_TOKEN past the end of the text
+	 */
+	public int peekToken(int ahead) {
+		return tokens[getToken(current + ahead) * TOKEN_FIELDS];
 	}
 
 	public int getLineNumber() {
-		// TODO Auto-generated method stub
 		return lineNumber;
 	}
+
+	/**
+	 * Get the number of characters scanned so far, all of them once the parser
+	 * is done.
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Get the number of tokens scanned so far.
+	 */
+	public long getScannedTokens() {
+		return scannedTokens;
+	}
+
+	/**
+	 * Commit the LexEvent of this lexer, if it is recorded. The parser calls
+	 * this when it is done with the lexer.
+	 */
+	void commitEvent(String programName) {
+		if (event == null)
+			return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.programName = programName;
+			event.sourceSize = position;
+			event.tokenCount = scannedTokens;
+			event.scanTime = scanNanos;
+			event.commit();
+		}
+		event = null;
+	}
+
+	/**
+	 * Count the line breaks in part of a program text.
+	 */
+	static int countLines(CharSequence s, int from, int to) {
+		int lines = 0;
+		for (int i = from; i < to; i++) {
+			if (s.charAt(i) == '\n')
+				lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * Find where the top-level declarations of a program end, by matching
+	 * braces. Braces in comments and string literals are skipped, as the
+	 * scanner skips them.
+	 * 
+	 * @param s the program text
+	 * @return the offset just past the closing brace of each top-level block,
+	 *         in order, or null if the braces do not match
+	 */
+	public static int[] findDeclarationEnds(String s) {
+		return findDeclarationEnds(s.toCharArray(), 0, s.length());
+	}
+
+	/**
+	 * Find where the top-level declarations in part of a program end. The part
+	 * must start outside of any block, comment or string literal.
+	 * 
+	 * @param s    the program text
+	 * @param from the offset where the part starts
+	 * @param to   the offset where it ends
+	 * @return the offsets in s just past the closing brace of each top-level
+	 *         block, in order, or null if the braces do not match
+	 */
+	public static int[] findDeclarationEnds(char[] s, int from, int to) {
+		int[] ends = new int[64];
+		int count = 0;
+		int depth = 0;
+		for (int i = from; i < to; i++) {
+			char c = s[i];
+			if (c == '#') {
+				while (i + 1 < to && s[i + 1] != '\n')
+					i++;
+			} else if (c == '"') {
+				do {
+					if (++i == to)
+						return null;
+				} while (s[i] != '"');
+			} else if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				if (--depth < 0)
+					return null;
+				if (depth == 0) {
+					if (count == ends.length)
+						ends = Arrays.copyOf(ends, count * 2);
+					ends[count++] = i + 1;
+				}
+			}
+		}
+		return depth == 0 ? Arrays.copyOf(ends, count) : null;
+	}
 }
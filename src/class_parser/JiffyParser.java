@@ -2,11 +2,22 @@
 //
 package class_parser;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 
+import class_events.ParseEvent;
+import class_events.ProgramLoadEvent;
+import class_helper.FileProcessor;
 import class_helper.JiffyError;
 import class_helper.ParseTree;
 import class_helper.TreeNode;
+import class_runtime.NumberValue;
 
 /**
  * JiffyParser parses a program string in the Jiffy language. Program string is
@@ -35,6 +46,26 @@ public class JiffyParser {
 
 	private boolean blockResume = false;
 
+	/**
+	 * What the program is called, e.g. its file name, and how big it is, for
+	 * Flight Recorder events.
+	 */
+	private String name = "";
+	private long sourceSize = 0;
+	private long tokenCount = 0;
+	private boolean cached = false; // loaded from an AstCache file
+
+	/**
+	 * parseFile parses declarations in parallel if this is set.
+	 */
+	private static volatile boolean parallel = false;
+
+	/**
+	 * Declarations are parsed in chunks of at least this many characters, so
+	 * that small functions do not cost a task each.
+	 */
+	private static final int CHUNK_SIZE = 16 * 1024;
+
 	/**
 	 * Constructor for JiffyParser. This uses JiffyLexer to tokenize the string and
 	 * then parse it. The resulting parse tree is assigned to ast
@@ -42,15 +73,62 @@ public class JiffyParser {
 	 * @param s the program string to be parsed
 	 */
 	public JiffyParser(String s, boolean detail) {
+		this(new StringReader(s), detail);
+	}
+
+	/**
+	 * Constructor for JiffyParser that reads the program from a Reader. The
+	 * program is tokenized as it is parsed, so it is never held in memory as a
+	 * whole.
+	 * 
+	 * @param in the program to be parsed
+	 */
+	public JiffyParser(Reader in, boolean detail) {
+		this(in, detail, "", 1);
+	}
+
+	/**
+	 * Constructor for JiffyParser of part of a program, such as a chunk of
+	 * declarations, whose first line is a later line of the program. Nodes and
+	 * errors get the line numbers of the whole program.
+	 */
+	JiffyParser(String s, String name, int firstLine) {
+		this(new StringReader(s), false, name, firstLine);
+	}
 
-		// First make a JiffyLexer to hold the string. This
+	private JiffyParser(Reader in, boolean detail, String name, int firstLine) {
+		this.name = name;
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		parse(in, detail, firstLine);
+		event.end();
+
+		if (lexer != null) {
+			lexer.commitEvent(name);
+			sourceSize = lexer.getPosition();
+			tokenCount = lexer.getScannedTokens();
+		}
+		if (event.shouldCommit()) {
+			event.programName = name;
+			event.sourceSize = sourceSize;
+			event.tokenCount = tokenCount;
+			event.nodeCount = ast == null ? 0 : ast.getRootNode().countNodes();
+			event.functionCount = funcs.size();
+			event.error = errorMessage;
+			event.commit();
+		}
+	}
+
+	private void parse(Reader in, boolean detail, int firstLine) {
+
+		// First make a JiffyLexer to read the program. This
 		// will get an error immediately if the first token
 		// is bad, so check for that.
 
 		try {
-			lexer = new JiffyLexer(s, detail);
+			lexer = new JiffyLexer(in, detail, firstLine);
 		} catch (JiffyError e) {
-			printError(e);
+			recordError(e);
 			return;
 		}
 
@@ -59,7 +137,7 @@ public class JiffyParser {
 		try {
 			ast = new ParseTree(parseProgram());
 		} catch (JiffyError e) {
-			printError(e);
+			recordError(e);
 			return;
 		}
 
@@ -69,16 +147,138 @@ public class JiffyParser {
 		try {
 			match(JiffyLexer.EOLN_TOKEN);
 		} catch (JiffyError e) {
-			printError(e);
-			;
+			recordError(e);
 			return;
 		}
 
 	}
 
-	private void printError(JiffyError e) {
-		System.err.println("\tLine " + lexer.getLineNumber() + ":" + e.getMessage());
-		System.exit(0);
+	JiffyParser(ParseTree ast, HashMap<String, TreeNode> funcs) {
+		this.ast = ast;
+		this.funcs = funcs;
+	}
+
+	/**
+	 * Parse a program file, or load it from its AstCache file if the source has
+	 * not changed since it was cached. A program that is parsed is cached for
+	 * the next run.
+	 * 
+	 * @param filename the name or path of a .jif file, see FileProcessor
+	 */
+	public static JiffyParser parseFile(String filename, boolean detail) throws Exception {
+		ProgramLoadEvent event = new ProgramLoadEvent();
+		event.begin();
+		File source = FileProcessor.findProgramFile(filename);
+		JiffyParser jp = load(source, detail);
+		event.end();
+		if (event.shouldCommit()) {
+			event.programName = jp.name;
+			event.sourceSize = source.length();
+			event.cached = jp.cached;
+			event.commit();
+		}
+		return jp;
+	}
+
+	private static JiffyParser load(File source, boolean detail) throws Exception {
+		if (!AstCache.isEnabled())
+			return parse(source, detail);
+
+		byte[] hash = AstCache.hash(source);
+		File cacheFile = AstCache.cacheFile(source, hash);
+		HashMap<String, TreeNode> funcs = new HashMap<String, TreeNode>();
+		ParseTree ast = AstCache.load(cacheFile, hash, funcs);
+		if (ast != null) {
+			JiffyParser jp = new JiffyParser(ast, funcs);
+			jp.name = source.getName();
+			jp.sourceSize = source.length();
+			jp.cached = true;
+			return jp;
+		}
+
+		JiffyParser jp = parse(source, detail);
+		if (jp.ast != null)
+			AstCache.store(cacheFile, hash, jp.ast, jp.funcs);
+		return jp;
+	}
+
+	private static JiffyParser parse(File source, boolean detail) throws Exception {
+		if (parallel && !detail)
+			return parseParallel(Files.readString(source.toPath()), source.getName());
+		try (Reader in = new BufferedReader(new FileReader(source))) {
+			return new JiffyParser(in, detail, source.getName(), 1);
+		}
+	}
+
+	public static void setParallel(boolean enabled) {
+		parallel = enabled;
+	}
+
+	/**
+	 * Parse a program with its function declarations split among the cores.
+	 * The declarations are found by brace matching, parsed in chunks on the
+	 * common ForkJoinPool and merged in program order, so the result is the same
+	 * as that of the sequential parser. If any chunk has an error the whole
+	 * program is parsed again sequentially, which gives the error and its line.
+	 * 
+	 * @param programText the program to be parsed
+	 */
+	public static JiffyParser parseParallel(String programText) {
+		return parseParallel(programText, "");
+	}
+
+	private static JiffyParser parseParallel(String programText, String name) {
+		int[] ends = JiffyLexer.findDeclarationEnds(programText);
+		if (ends == null || ends.length < 2)
+			return new JiffyParser(programText, name, 1);
+
+		// Cut the text after a declaration once a chunk is big enough; the last
+		// chunk also holds whatever follows the last declaration
+		int[] bounds = new int[ends.length];
+		int chunks = 0;
+		int start = 0;
+		for (int i = 0; i < ends.length - 1; i++) {
+			if (ends[i] - start >= CHUNK_SIZE)
+				start = bounds[chunks++] = ends[i];
+		}
+		if (chunks == 0)
+			return new JiffyParser(programText, name, 1);
+		bounds[chunks++] = programText.length();
+
+		int[] firstLines = new int[chunks];
+		firstLines[0] = 1;
+		for (int i = 1; i < chunks; i++)
+			firstLines[i] = firstLines[i - 1] + JiffyLexer.countLines(programText, i == 1 ? 0 : bounds[i - 2], bounds[i - 1]);
+
+		JiffyParser[] parts = new JiffyParser[chunks];
+		Arrays.parallelSetAll(parts,
+				i -> new JiffyParser(programText.substring(i == 0 ? 0 : bounds[i - 1], bounds[i]), name, firstLines[i]));
+
+		TreeNode program = new TreeNode(TreeNode.PROGRAM, "program");
+		HashMap<String, TreeNode> funcs = new HashMap<String, TreeNode>();
+		long tokens = 0;
+		for (JiffyParser part : parts) {
+			if (part.errorMessage != null)
+				return new JiffyParser(programText, name, 1);
+			for (TreeNode function : part.ast.getRootNode().getChildren())
+				program.add(function);
+			funcs.putAll(part.funcs);
+			tokens += part.tokenCount;
+		}
+		JiffyParser jp = new JiffyParser(new ParseTree(program), funcs);
+		jp.name = name;
+		jp.sourceSize = programText.length();
+		jp.tokenCount = tokens;
+		return jp;
+	}
+
+	/**
+	 * A program with a syntax error has no AST; the error is kept for
+	 * getErrorMessage.
+	 */
+	private void recordError(JiffyError e) {
+		errorMessage = "Line " + (lexer == null ? 1 : lexer.getLineNumber()) + ":" + e.getMessage();
+		ast = null;
 	}
 
 	private TreeNode parseProgram() throws JiffyError {
@@ -87,7 +287,7 @@ public class JiffyParser {
 		// subsequent calls to nextToken return the same token
 		// only advance (which is called in match) actually moves the marker past this
 		// token to the next token
-		TreeNode result = new TreeNode("program");
+		TreeNode result = new TreeNode(TreeNode.PROGRAM, "program");
 		while (lexer.nextToken() == JiffyLexer.FUN_TOKEN) // one or more function declarations exist
 			result.add(parseFunctionDeclaration());
 
@@ -95,20 +295,22 @@ public class JiffyParser {
 	}
 
 	private TreeNode parseFunctionDeclaration() throws JiffyError {
+		int line = lexer.getLineNumber();
 		match(JiffyLexer.FUN_TOKEN);
 		String funcName = lexer.getTokenString();
-		TreeNode result = new TreeNode("fun " + funcName + "()"); // func name
+		TreeNode result = new TreeNode(TreeNode.FUNCTION, "fun " + funcName + "()"); // func name
+		result.setLine(line);
 		match(JiffyLexer.IDENTIFIER_TOKEN);
 		match('(');
 
 		// Process formal parameters, if any
 		if (lexer.nextToken() == JiffyLexer.IDENTIFIER_TOKEN) {
-			result.add(new TreeNode(lexer.getTokenString()));
+			result.add(new TreeNode(TreeNode.IDENTIFIER, lexer.getTokenString()));
 			match(JiffyLexer.IDENTIFIER_TOKEN);
 
 			while (lexer.nextToken() == ',') {
 				match(',');
-				result.add(new TreeNode(lexer.getTokenString()));
+				result.add(new TreeNode(TreeNode.IDENTIFIER, lexer.getTokenString()));
 				match(JiffyLexer.IDENTIFIER_TOKEN);
 			}
 		}
@@ -126,7 +328,7 @@ public class JiffyParser {
 	private TreeNode parseBlock() throws JiffyError {
 		// <block> ::= { <statement_list> }
 
-		TreeNode result = new TreeNode("block");
+		TreeNode result = new TreeNode(TreeNode.BLOCK, "block");
 		if (lexer.nextToken() == '{') { // parse a block
 			match('{');
 			result.add(parseStatementList());
@@ -144,16 +346,19 @@ public class JiffyParser {
 
 	private TreeNode parseBlockWithReturn() throws JiffyError {
 		TreeNode block = parseBlock();
+		// A function body ends the declaration, not a statement list, so the
+		// next declaration must not resume after it
+		blockResume = false;
 		// Add the mandatory return statement in case none exists
-		TreeNode ret = new TreeNode("return");
-		ret.add(new TreeNode("\"None\""));
+		TreeNode ret = new TreeNode(TreeNode.RETURN, "return");
+		ret.add(new TreeNode(TreeNode.STRING, "\"None\""));
 		(block.getLeft()).add(ret);
 		return block;
 	}
 
 	private TreeNode parseStatementList() throws JiffyError {
 		// <statement_list> ::= <statement> | <statement> ; <statement_list>
-		TreeNode result = new TreeNode("stmnt_list");
+		TreeNode result = new TreeNode(TreeNode.STATEMENT_LIST, "stmnt_list");
 		result.add(parseStatement()); // the first statement
 
 		while (true) {
@@ -169,6 +374,15 @@ public class JiffyParser {
 	}
 
 	private TreeNode parseStatement() throws JiffyError {
+		// Remember where each statement starts, for profiles
+		int line = lexer.getLineNumber();
+		TreeNode statement = parseStatementOnly();
+		if (statement != null)
+			statement.setLine(line);
+		return statement;
+	}
+
+	private TreeNode parseStatementOnly() throws JiffyError {
 		if (lexer.nextToken() == JiffyLexer.IDENTIFIER_TOKEN) {
 			return parseAssignmentStatement();
 		} else if (lexer.nextToken() == JiffyLexer.WRITE_TOKEN) {
@@ -189,7 +403,7 @@ public class JiffyParser {
 	}
 
 	private TreeNode parseReturnStatement() throws JiffyError {
-		TreeNode result = new TreeNode("return");
+		TreeNode result = new TreeNode(TreeNode.RETURN, "return");
 		match(JiffyLexer.RETURN_TOKEN);
 		result.add(parseArithmeticExpression());
 		return result;
@@ -198,12 +412,12 @@ public class JiffyParser {
 	private TreeNode parseAssignmentStatement() throws JiffyError {
 		// <assignment_statement> ::= <identifier> = <exp>
 
-		TreeNode result = new TreeNode(lexer.getTokenString()); // identifier
+		TreeNode result = new TreeNode(TreeNode.IDENTIFIER, lexer.getTokenString()); // identifier
 		match(JiffyLexer.IDENTIFIER_TOKEN);
 
 		if (lexer.nextToken() == '=') {
 			match('=');
-			result = new TreeNode("=", result, parseArithmeticExpression());
+			result = new TreeNode(TreeNode.ASSIGN, "=", result, parseArithmeticExpression());
 			return result;
 		} else
 			throw new JiffyError("Malformed assignment statement");
@@ -213,7 +427,7 @@ public class JiffyParser {
 		// <write_statement> ::= write ( <exp> )
 
 		match(JiffyLexer.WRITE_TOKEN);
-		TreeNode result = new TreeNode("write");
+		TreeNode result = new TreeNode(TreeNode.WRITE, "write");
 		match('(');
 		result.add(parseArithmeticExpression());
 		match(')');
@@ -224,10 +438,10 @@ public class JiffyParser {
 		// <read_statement> ::= read ( <identifier> )
 
 		match(JiffyLexer.READ_TOKEN);
-		TreeNode result = new TreeNode("read");
+		TreeNode result = new TreeNode(TreeNode.READ, "read");
 		match('(');
 		if (lexer.nextToken() == JiffyLexer.IDENTIFIER_TOKEN) {
-			result.add(new TreeNode(lexer.getTokenString())); // identifier name
+			result.add(new TreeNode(TreeNode.IDENTIFIER, lexer.getTokenString())); // identifier name
 			match(JiffyLexer.IDENTIFIER_TOKEN);
 		}
 		match(')');
@@ -238,7 +452,7 @@ public class JiffyParser {
 		// <whilestatement> ::= while ( <bexp> ) <block>
 
 		match(JiffyLexer.WHILE_TOKEN);
-		TreeNode result = new TreeNode("while");
+		TreeNode result = new TreeNode(TreeNode.WHILE, "while");
 		// Complete this method
 		match('(');
 		result.add(parseBooleanExpression());
@@ -253,7 +467,7 @@ public class JiffyParser {
 		// <ifstatement> ::= if (<bexp>) <block> else <block>| if (<bexp>) <block>
 
 		match(JiffyLexer.IF_TOKEN);
-		TreeNode result = new TreeNode("if");
+		TreeNode result = new TreeNode(TreeNode.IF, "if");
 		// Complete this method
 		
 		match('(');
@@ -263,15 +477,9 @@ public class JiffyParser {
 		result.add(parseBlock());
 		
 		//deal with else statements
-		// try to see if there is an else after the if, if not jump into the catch block
-		try {
+		if (lexer.nextToken() == JiffyLexer.ELSE_TOKEN) {
 			match(JiffyLexer.ELSE_TOKEN);
-			result.add(parseBlock()); 
-		
-		}
-		catch(JiffyError e){
-			 
-
+			result.add(parseBlock());
 		}
 
 		return result;
@@ -284,13 +492,13 @@ public class JiffyParser {
 
 		if (lexer.nextToken() == '>') {
 			match('>');
-			result = new TreeNode(">", result, parseArithmeticExpression());
+			result = new TreeNode(TreeNode.COMPARISON, ">", result, parseArithmeticExpression());
 		} else if (lexer.nextToken() == '<') {
 			match('<');
-			result = new TreeNode("<", result, parseArithmeticExpression());
+			result = new TreeNode(TreeNode.COMPARISON, "<", result, parseArithmeticExpression());
 		} else if (lexer.nextToken() == '?') { //edited in class
 			match('?'); //edited in class
-			result = new TreeNode("?", result, parseArithmeticExpression()); //edited in class
+			result = new TreeNode(TreeNode.COMPARISON, "?", result, parseArithmeticExpression()); //edited in class
 		}
 
 		return result;
@@ -324,7 +532,7 @@ public class JiffyParser {
 		while (true) {
 			if (lexer.nextToken() == '$') {
 				match('$');
-				result = new TreeNode("$", result, parseAddExp());
+				result = new TreeNode(TreeNode.OPERATOR, "$", result, parseAddExp());
 			} else
 				return result;
 		}
@@ -347,10 +555,10 @@ public class JiffyParser {
 		while (true) {
 			if (lexer.nextToken() == '+') {
 				match('+');
-				result = new TreeNode("+", result, parseMulExp());
+				result = new TreeNode(TreeNode.OPERATOR, "+", result, parseMulExp());
 			} else if (lexer.nextToken() == '-') {
 				match('-');
-				result = new TreeNode("-", result, parseMulExp());
+				result = new TreeNode(TreeNode.OPERATOR, "-", result, parseMulExp());
 			} else
 				return result;
 		}
@@ -371,13 +579,13 @@ public class JiffyParser {
 		while (true) {
 			if (lexer.nextToken() == '*') {
 				match('*');
-				result = new TreeNode("*", result, parsePowExp());
+				result = new TreeNode(TreeNode.OPERATOR, "*", result, parsePowExp());
 			} else if (lexer.nextToken() == '/') {
 				match('/');
-				result = new TreeNode("/", result, parsePowExp());
+				result = new TreeNode(TreeNode.OPERATOR, "/", result, parsePowExp());
 			} else if (lexer.nextToken() == '%') {
 				match('%');
-				result = new TreeNode("%", result, parsePowExp());
+				result = new TreeNode(TreeNode.OPERATOR, "%", result, parsePowExp());
 			} else
 				return result;
 		}
@@ -399,7 +607,7 @@ public class JiffyParser {
 		while (true) {
 			if (lexer.nextToken() == '^') {
 				match('^');
-				result = new TreeNode("^", result, parsePowExp());
+				result = new TreeNode(TreeNode.OPERATOR, "^", result, parsePowExp());
 			} else
 				return result;
 		}
@@ -426,7 +634,7 @@ public class JiffyParser {
 		// <rootexp> ::= number
 
 		else if (lexer.nextToken() == JiffyLexer.NUMBER_TOKEN) {
-			result = new TreeNode(Double.toString(lexer.getNum()));
+			result = new TreeNode(TreeNode.NUMBER, numberSymbol());
 			match(JiffyLexer.NUMBER_TOKEN);
 		} else if (lexer.nextToken() == JiffyLexer.IDENTIFIER_TOKEN) {
 			String symbol = lexer.getTokenString();
@@ -434,10 +642,10 @@ public class JiffyParser {
 			if (lexer.nextToken() == '(') {
 				result = parseFuncCall(symbol);
 			} else {
-				result = new TreeNode(symbol);
+				result = new TreeNode(TreeNode.IDENTIFIER, symbol);
 			}
 		} else if (lexer.nextToken() == JiffyLexer.STRING_TOKEN) {
-			result = new TreeNode(lexer.getTokenString());
+			result = new TreeNode(TreeNode.STRING, lexer.getTokenString());
 			match(JiffyLexer.STRING_TOKEN);
 		} else {
 			errorMessage = "Expected a number, identifier, string literal, or a parenthesis.";
@@ -446,9 +654,26 @@ public class JiffyParser {
 		return result;
 	}
 
+	/**
+	 * Make the symbol of the current number literal. The parse tree shows
+	 * numbers as doubles, e.g. 5.0, except for an integer that a double would
+	 * round: that one keeps its digits, so that its value is exact.
+	 */
+	private String numberSymbol() {
+		double d = lexer.getNum();
+		if (d < NumberValue.MAX_EXACT)
+			return Double.toString(d);
+		String text = lexer.getTokenString();
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) < '0' || text.charAt(i) > '9')
+				return Double.toString(d);
+		}
+		return text;
+	}
+
 	private TreeNode parseFuncCall(String symbol) throws JiffyError {
 		// TODO Auto-generated method stub
-		TreeNode result = new TreeNode(symbol + "()");
+		TreeNode result = new TreeNode(TreeNode.CALL, symbol + "()");
 		match('(');
 		if (lexer.nextToken() == ')') { // no params
 			match(')');
@@ -498,7 +723,8 @@ public class JiffyParser {
 	}
 
 	/**
-	 * Get the error message or null if none.
+	 * Get the error message or null if none. If the program has a syntax error,
+	 * getAST returns null.
 	 *
 	 * @return the error message or null
 	 */
@@ -515,6 +741,27 @@ public class JiffyParser {
 		return ast;
 	}
 
+	/**
+	 * Get the name of the program, its file name if it was read by parseFile.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the number of characters parsed, or of bytes of a cached program file.
+	 */
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	/**
+	 * Get the number of tokens parsed, 0 if the program came from its cache.
+	 */
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
 	public HashMap<String, TreeNode> getFuncs() {
 		return funcs;
 	}
@@ -0,0 +1,227 @@
+package class_parser;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import class_helper.ParseTree;
+import class_helper.TreeNode;
+
+/**
+ * A ProgramModel keeps a program parsed while its source is being edited. It
+ * remembers where each function declaration ends in the source, so that after
+ * an edit only the declarations that the edit touches are lexed and parsed
+ * again, and the new functions are spliced into the ParseTree and the funcs map
+ * in place of the old ones.
+ *
+ * Declaration i of the model is the text from the end of declaration i-1 up to
+ * and including the closing brace of function i, i.e. with the comments and
+ * white space before the function; the last one also holds whatever follows
+ * the last function. Child i of the program node is function i.
+ */
+public class ProgramModel {
+	// Suffixes are compared in blocks of this many characters first
+	private static final int BLOCK = 1024;
+
+	private char[] source = new char[0];
+	private int[] ends = new int[0];
+	private final TreeNode program = new TreeNode(TreeNode.PROGRAM, "program");
+	private final ParseTree ast = new ParseTree(program);
+	private final HashMap<String, TreeNode> funcs = new HashMap<String, TreeNode>();
+
+	// If two functions have the same name the last one wins, so funcs is built
+	// again after every change instead of being spliced
+	private boolean duplicates = false;
+
+	private String errorMessage;
+	private int reparsed;
+
+	public ProgramModel(String programText) {
+		if (!reparse(programText.toCharArray(), 0, 0, 0))
+			fail(programText);
+	}
+
+	/**
+	 * Bring the model up to date with an edited program. If the new text has a
+	 * syntax error, the model keeps the last program that parsed, and
+	 * getErrorMessage tells what is wrong.
+	 *
+	 * @param programText the whole program after the edit
+	 * @return true if the program parsed
+	 */
+	public boolean update(String programText) {
+		char[] text = programText.toCharArray();
+		errorMessage = null;
+		reparsed = 0;
+
+		// Find the text that changed: everything but a common prefix and suffix
+		int prefix = Arrays.mismatch(source, text);
+		if (prefix < 0)
+			return true;
+		int oldLength = source.length;
+		int newLength = text.length;
+		int limit = Math.min(oldLength, newLength) - prefix;
+		int suffix = 0;
+		while (suffix + BLOCK <= limit && Arrays.equals(source, oldLength - suffix - BLOCK, oldLength - suffix, text,
+				newLength - suffix - BLOCK, newLength - suffix))
+			suffix += BLOCK;
+		while (suffix < limit && source[oldLength - 1 - suffix] == text[newLength - 1 - suffix])
+			suffix++;
+
+		// Declarations that end before the change are kept, and so are those
+		// that start after it
+		int first = firstEndAtLeast(prefix);
+		int after = first == ends.length ? first : firstEndAtLeast(oldLength - suffix) + 1;
+		if (reparse(text, first, Math.min(after, ends.length), newLength - oldLength))
+			return true;
+
+		// The change did not leave whole declarations, e.g. it opened a block
+		// that a later declaration closes
+		if (reparse(text, 0, ends.length, newLength - oldLength))
+			return true;
+		return fail(programText);
+	}
+
+	/**
+	 * Find the first declaration that ends at or after an offset of the old
+	 * source.
+	 */
+	private int firstEndAtLeast(int offset) {
+		int i = Arrays.binarySearch(ends, offset);
+		if (i < 0)
+			return -i - 1;
+		while (i > 0 && ends[i - 1] == offset)
+			i--;
+		return i;
+	}
+
+	/**
+	 * Parse the new text of declarations first to after-1 of the model and put
+	 * the functions in place of the old ones.
+	 *
+	 * @param text  the new program
+	 * @param delta how much longer the new program is than the old one
+	 * @return false if that text does not hold whole declarations that parse
+	 */
+	private boolean reparse(char[] text, int first, int after, int delta) {
+		int start = first == 0 ? 0 : ends[first - 1];
+		int end = after == ends.length ? text.length : ends[after - 1] + delta;
+		int[] newEnds = JiffyLexer.findDeclarationEnds(text, start, end);
+		if (newEnds == null)
+			return false;
+		if (after == ends.length) { // the last declaration runs to the end
+			if (newEnds.length == 0)
+				return false;
+			newEnds[newEnds.length - 1] = end;
+		} else if (newEnds.length == 0 ? start != end : newEnds[newEnds.length - 1] != end) {
+			return false;
+		}
+
+		List<TreeNode> functions = new ArrayList<TreeNode>();
+		CharBuffer chars = CharBuffer.wrap(text);
+		int firstLine = 1 + JiffyLexer.countLines(chars, 0, start);
+		if (start < end) {
+			JiffyParser jp = new JiffyParser(new String(text, start, end - start), "", firstLine);
+			if (jp.getErrorMessage() != null)
+				return false;
+			functions = jp.getAST().getRootNode().getChildren();
+		}
+		if (functions.size() != newEnds.length)
+			return false;
+
+		int[] allEnds = new int[first + newEnds.length + ends.length - after];
+		System.arraycopy(ends, 0, allEnds, 0, first);
+		System.arraycopy(newEnds, 0, allEnds, first, newEnds.length);
+		for (int i = after; i < ends.length; i++)
+			allEnds[first + newEnds.length + i - after] = ends[i] + delta;
+
+		List<TreeNode> replaced = program.getChildren().subList(first, after);
+		List<TreeNode> removed = new ArrayList<TreeNode>(replaced);
+		replaced.clear();
+		replaced.addAll(functions);
+		updateFuncs(removed, functions);
+
+		// The functions after the change move if it added or removed lines
+		int oldEnd = after == ends.length ? source.length : ends[after - 1];
+		int lines = JiffyLexer.countLines(chars, start, end)
+				- JiffyLexer.countLines(CharBuffer.wrap(source), start, oldEnd);
+		if (lines != 0) {
+			List<TreeNode> children = program.getChildren();
+			for (int i = first + functions.size(); i < children.size(); i++)
+				children.get(i).shiftLines(lines);
+		}
+
+		source = text;
+		ends = allEnds;
+		reparsed = functions.size();
+		return true;
+	}
+
+	private void updateFuncs(List<TreeNode> removed, List<TreeNode> added) {
+		if (!duplicates) {
+			for (TreeNode function : removed)
+				funcs.remove(function.getName());
+			for (TreeNode function : added)
+				put(function);
+			if (!duplicates)
+				return;
+		}
+
+		// Some name is declared more than once, and the last declaration wins
+		funcs.clear();
+		duplicates = false;
+		for (TreeNode function : program.getChildren())
+			put(function);
+	}
+
+	private void put(TreeNode function) {
+		if (funcs.put(function.getName(), function) != null)
+			duplicates = true;
+	}
+
+	/**
+	 * Record the error of a program that does not parse. The whole text is
+	 * parsed again for the message, so that its line number is right.
+	 */
+	private boolean fail(String programText) {
+		errorMessage = new JiffyParser(programText, false).getErrorMessage();
+		if (errorMessage == null)
+			errorMessage = "Expected function declarations";
+		return false;
+	}
+
+	/**
+	 * Get a JiffyParser for the program, to be run by an engine.
+	 */
+	public JiffyParser getParser() {
+		return new JiffyParser(ast, funcs);
+	}
+
+	public ParseTree getAST() {
+		return ast;
+	}
+
+	public HashMap<String, TreeNode> getFuncs() {
+		return funcs;
+	}
+
+	/**
+	 * Get the error of the last update, or null if the program parsed.
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/**
+	 * Get the number of declarations that the last update parsed.
+	 */
+	public int getReparsed() {
+		return reparsed;
+	}
+
+	public int getDeclarationCount() {
+		return ends.length;
+	}
+}
@@ -22,7 +22,7 @@ public class TestLexer {
 		JiffyLexer jlex;
 		try {
 			jlex = new JiffyLexer(programText, true);
-			while (true) {
+			while (jlex.nextToken() != JiffyLexer.EOLN_TOKEN) {
 				try {
 					jlex.advance();
 				} catch (JiffyError e) {
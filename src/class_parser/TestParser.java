@@ -22,7 +22,10 @@ public class TestParser {
 		JiffyParser jp = new JiffyParser(programText, true);
 
 		ParseTree pt = jp.getAST();
-		System.out.println(programText + " parses as " + pt);
+		if (pt == null)
+			System.err.println("\t" + jp.getErrorMessage());
+		else
+			System.out.println(programText + " parses as " + pt);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,195 @@
+package class_runtime;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic and relational operators on Jiffy values. Every execution engine
+ * goes through these methods so that all of them agree on the meaning of an
+ * operator.
+ */
+public class Arithmetic {
+
+	/**
+	 * Apply a binary arithmetic operator.
+	 * 
+	 * @param op    the operator symbol, one of + - * / ^ $ %
+	 * @param left  the left operand
+	 * @param right the right operand
+	 * @return the result of the operation
+	 */
+	public static Value apply(String op, Value left, Value right) {
+		return apply(op.charAt(0), left, right);
+	}
+
+	public static Value apply(char op, Value left, Value right) {
+		if (left instanceof IntegerValue && right instanceof IntegerValue) {
+			Value result = compute(op, ((IntegerValue) left).toLong(), ((IntegerValue) right).toLong());
+			if (result != null)
+				return result;
+		}
+		if (BigIntegerValue.isInteger(left) && BigIntegerValue.isInteger(right)) {
+			Value result = compute(op, BigIntegerValue.toBigInteger(left), BigIntegerValue.toBigInteger(right));
+			if (result != null)
+				return result;
+		} else if (op == '+') {
+			return add(left, right);
+		}
+		return NumberValue.of(compute(op, left.toDouble(), right.toDouble()));
+	}
+
+	/**
+	 * + is overloaded. It means addition when both operands are numbers and
+	 * string concatenation otherwise.
+	 */
+	public static Value add(Value left, Value right) {
+		if (BigIntegerValue.isInteger(left) && BigIntegerValue.isInteger(right))
+			return apply('+', left, right);
+		if (left.isNumber() && right.isNumber())
+			return NumberValue.of(left.toDouble() + right.toDouble());
+		return StringValue.concat(left, right);
+	}
+
+	/**
+	 * Apply an arithmetic operator to two integers, in long arithmetic.
+	 * 
+	 * @return the result, or null if it is not an integer or does not fit in a
+	 *         long, and the operator has to be applied to BigIntegers
+	 */
+	private static Value compute(char op, long leftVal, long rightVal) {
+		try {
+			switch (op) {
+			case '+':
+				return IntegerValue.valueOf(Math.addExact(leftVal, rightVal));
+			case '-':
+				return IntegerValue.valueOf(Math.subtractExact(leftVal, rightVal));
+			case '*':
+				return IntegerValue.valueOf(Math.multiplyExact(leftVal, rightVal));
+			case '/':
+				if (rightVal == 0 || leftVal % rightVal != 0 || (leftVal == Long.MIN_VALUE && rightVal == -1))
+					return null;
+				return IntegerValue.valueOf(leftVal / rightVal);
+			case '$':
+				return IntegerValue.valueOf(Math.max(leftVal, rightVal));
+			case '%':
+				return rightVal == 0 ? null : IntegerValue.valueOf(leftVal % rightVal);
+			case '^':
+				if (rightVal < 0)
+					return null;
+				long result = 1;
+				for (long base = leftVal, exp = rightVal; exp != 0; exp >>= 1) {
+					if ((exp & 1) != 0)
+						result = Math.multiplyExact(result, base);
+					if (exp > 1)
+						base = Math.multiplyExact(base, base);
+				}
+				return IntegerValue.valueOf(result);
+			default:
+				return null;
+			}
+		} catch (ArithmeticException e) { // overflow
+			return null;
+		}
+	}
+
+	// Powers of BigIntegers are exact up to this many bits, and doubles beyond
+	private static final long MAX_POWER_BITS = 1 << 20;
+
+	/**
+	 * Apply an arithmetic operator to two integers, at least one of which does
+	 * not fit in a long. The result is demoted to a long when it fits.
+	 * 
+	 * @return the result, or null if it is not an integer and the operator has
+	 *         to be applied to doubles
+	 */
+	private static Value compute(char op, BigInteger leftVal, BigInteger rightVal) {
+		switch (op) {
+		case '+':
+			return BigIntegerValue.of(leftVal.add(rightVal));
+		case '-':
+			return BigIntegerValue.of(leftVal.subtract(rightVal));
+		case '*':
+			return BigIntegerValue.of(leftVal.multiply(rightVal));
+		case '/':
+			if (rightVal.signum() == 0)
+				return null;
+			BigInteger[] quotient = leftVal.divideAndRemainder(rightVal);
+			return quotient[1].signum() == 0 ? BigIntegerValue.of(quotient[0]) : null;
+		case '$':
+			return BigIntegerValue.of(leftVal.max(rightVal));
+		case '%':
+			return rightVal.signum() == 0 ? null : BigIntegerValue.of(leftVal.remainder(rightVal));
+		case '^':
+			if (rightVal.signum() < 0 || rightVal.bitLength() > 31
+					|| (long) leftVal.bitLength() * rightVal.intValue() > MAX_POWER_BITS)
+				return null;
+			return BigIntegerValue.of(leftVal.pow(rightVal.intValue()));
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Apply an arithmetic operator to two doubles.
+	 * 
+	 * @param op        the operator character
+	 * @param leftVal   the left operand
+	 * @param rightVal  the right operand
+	 * @return the result
+	 */
+	public static double compute(char op, double leftVal, double rightVal) {
+		switch (op) {
+		case '+':
+			return leftVal + rightVal;
+		case '-':
+			return leftVal - rightVal;
+		case '*':
+			return leftVal * rightVal;
+		case '/':
+			return leftVal / rightVal;
+		case '^': // exponential where leftVal is the base and rightVal is the exponent
+			return Math.pow(leftVal, rightVal);
+		case '$': // max function that gives the greater of the two values
+			return leftVal > rightVal ? leftVal : rightVal;
+		case '%': // modulo, the remainder when one number is divided by another
+			return leftVal % rightVal;
+		default:
+			throw new IllegalArgumentException("Unknown operator " + op);
+		}
+	}
+
+	/**
+	 * Apply a relational operator, one of ? (equality), &gt; or &lt;.
+	 */
+	public static boolean compare(String op, Value left, Value right) {
+		return compare(op.charAt(0), left, right);
+	}
+
+	public static boolean compare(char op, Value left, Value right) {
+		if (left instanceof IntegerValue && right instanceof IntegerValue) {
+			int c = Long.compare(((IntegerValue) left).toLong(), ((IntegerValue) right).toLong());
+			return compare(op, c);
+		}
+		if (BigIntegerValue.isInteger(left) && BigIntegerValue.isInteger(right)) {
+			int c = BigIntegerValue.toBigInteger(left).compareTo(BigIntegerValue.toBigInteger(right));
+			return compare(op, c);
+		}
+		return compare(op, left.toDouble(), right.toDouble());
+	}
+
+	private static boolean compare(char op, int c) {
+		return op == '?' ? c == 0 : op == '>' ? c > 0 : op == '<' ? c < 0 : true;
+	}
+
+	public static boolean compare(char op, double left, double right) {
+		switch (op) {
+		case '?':
+			return left == right;
+		case '>':
+			return left > right;
+		case '<':
+			return left < right;
+		default:
+			return true;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package class_runtime;
+
+import java.math.BigInteger;
+
+/**
+ * An integer too big for a long. Integer arithmetic is done on longs and only
+ * moves to BigInteger when a result overflows; see Arithmetic. Results that
+ * fit in a long again are IntegerValues, so a BigIntegerValue is never in the
+ * range of a long.
+ */
+public final class BigIntegerValue extends Value {
+
+	private final BigInteger value;
+
+	private BigIntegerValue(BigInteger value) {
+		this.value = value;
+	}
+
+	/**
+	 * Make the value of an integer: an IntegerValue if it fits in a long, a
+	 * BigIntegerValue otherwise.
+	 */
+	public static Value of(BigInteger value) {
+		if (value.bitLength() < 64)
+			return IntegerValue.valueOf(value.longValue());
+		return new BigIntegerValue(value);
+	}
+
+	/**
+	 * Get the value of an integer, which must be an IntegerValue or a
+	 * BigIntegerValue, as a BigInteger.
+	 */
+	public static BigInteger toBigInteger(Value v) {
+		if (v instanceof IntegerValue)
+			return BigInteger.valueOf(((IntegerValue) v).toLong());
+		return ((BigIntegerValue) v).value;
+	}
+
+	/**
+	 * Check whether a value is an integer, of either size.
+	 */
+	public static boolean isInteger(Value v) {
+		return v instanceof IntegerValue || v instanceof BigIntegerValue;
+	}
+
+	@Override
+	public boolean isNumber() {
+		return true;
+	}
+
+	@Override
+	public double toDouble() {
+		return value.doubleValue();
+	}
+
+	public BigInteger toBigInteger() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return value.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof BigIntegerValue && value.equals(((BigIntegerValue) o).value);
+	}
+
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+}
@@ -0,0 +1,101 @@
+package class_runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * An OutputSink that collects lines in a buffer and hands them on in batches,
+ * each time the buffer is full and when it is flushed. A write then costs an
+ * append to the buffer instead of a synchronized write to a stream.
+ */
+public class BufferedOutput implements OutputSink, Closeable {
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private final StringBuilder buffer;
+	private final int capacity;
+	private final Consumer<? super String> target;
+	private final Closeable resource;
+
+	/**
+	 * Make a sink that passes batches of lines to a callback.
+	 * 
+	 * @param target receives the text of one or more whole lines at a time, as
+	 *               a String that it may keep
+	 */
+	public BufferedOutput(Consumer<? super String> target) {
+		this(target, DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * @param capacity the number of characters after which the buffer is passed
+	 *                 on
+	 * @param resource closed with the sink, or null
+	 */
+	public BufferedOutput(Consumer<? super String> target, int capacity, Closeable resource) {
+		this.buffer = new StringBuilder(capacity + 256);
+		this.capacity = capacity;
+		this.target = target;
+		this.resource = resource;
+	}
+
+	/**
+	 * Make a sink for standard output.
+	 */
+	public static BufferedOutput stdout() {
+		return to(System.out);
+	}
+
+	public static BufferedOutput to(PrintStream out) {
+		return new BufferedOutput(text -> {
+			out.append(text);
+			out.flush();
+		});
+	}
+
+	/**
+	 * Make a sink that writes a file, replacing it if it exists. Close the sink
+	 * to close the file.
+	 */
+	public static BufferedOutput toFile(Path file) throws IOException {
+		Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		return new BufferedOutput(text -> {
+			try {
+				writer.append(text);
+				writer.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, DEFAULT_CAPACITY, writer);
+	}
+
+	@Override
+	public void println(String line) {
+		buffer.append(line).append('\n');
+		if (buffer.length() >= capacity)
+			flush();
+	}
+
+	@Override
+	public void flush() {
+		if (buffer.length() > 0) {
+			// A copy, since the buffer is reused for the next batch
+			String text = buffer.toString();
+			buffer.setLength(0);
+			target.accept(text);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		if (resource != null)
+			resource.close();
+	}
+}
@@ -0,0 +1,14 @@
+package class_runtime;
+
+/**
+ * An InputSource supplies the values of read statements, one value per read.
+ */
+public interface InputSource {
+	/**
+	 * Get the value for the next read statement.
+	 * 
+	 * @return the value, or null if the input has ended
+	 * @throws java.io.UncheckedIOException if the input cannot be read
+	 */
+	public Value next();
+}
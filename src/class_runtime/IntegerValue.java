@@ -0,0 +1,61 @@
+package class_runtime;
+
+/**
+ * An integral numeric value held exactly in a long. Arithmetic on two integers
+ * stays in long arithmetic as long as the result is integral and fits; see
+ * Arithmetic. Integers compare equal to numbers only through toDouble, so a
+ * number that is integral should be made with NumberValue.of, which gives an
+ * IntegerValue for it.
+ */
+public final class IntegerValue extends Value {
+	// Small integers such as loop counters are shared instead of allocated
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1023;
+	private static final IntegerValue[] CACHE = new IntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++)
+			CACHE[i] = new IntegerValue(CACHE_LOW + i);
+	}
+
+	private final long value;
+
+	private IntegerValue(long value) {
+		this.value = value;
+	}
+
+	public static IntegerValue valueOf(long value) {
+		if (value >= CACHE_LOW && value <= CACHE_HIGH)
+			return CACHE[(int) value - CACHE_LOW];
+		return new IntegerValue(value);
+	}
+
+	@Override
+	public boolean isNumber() {
+		return true;
+	}
+
+	@Override
+	public double toDouble() {
+		return value;
+	}
+
+	public long toLong() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof IntegerValue && value == ((IntegerValue) o).value;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(value);
+	}
+}
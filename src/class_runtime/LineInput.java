@@ -0,0 +1,134 @@
+package class_runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An InputSource that reads one value per line of text, like Scanner.nextLine
+ * but without a Scanner's pattern matching. Lines end with \n, \r or \r\n, and
+ * the text of a line is converted by Value.fromText.
+ * 
+ * Standard input has one LineInput, so that text buffered for one read is
+ * never lost to another.
+ */
+public class LineInput implements InputSource, Closeable {
+	private static final LineInput STDIN = new LineInput(System.in);
+
+	private final Reader in;
+	private char[] buffer = new char[8192];
+	private int position = 0;
+	private int limit = 0;
+	private boolean ended = false;
+	private boolean skipNewline = false; // the last line ended with \r
+
+	public LineInput(Reader in) {
+		this.in = in;
+	}
+
+	public LineInput(InputStream in) {
+		this(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the LineInput of standard input.
+	 */
+	public static LineInput stdin() {
+		return STDIN;
+	}
+
+	/**
+	 * Make a LineInput that reads a file. Close it to close the file.
+	 */
+	public static LineInput fromFile(Path file) throws IOException {
+		return new LineInput(Files.newInputStream(file));
+	}
+
+	@Override
+	public Value next() {
+		String line = readLine();
+		return line == null ? null : Value.fromText(line);
+	}
+
+	/**
+	 * Read the next line.
+	 * 
+	 * @return the line without its end, or null if the input has ended
+	 */
+	public String readLine() {
+		int scan = position;
+		while (true) {
+			if (scan == limit) {
+				scan -= position;
+				if (!fill())
+					break;
+				scan += position;
+				continue;
+			}
+
+			char c = buffer[scan];
+			if (skipNewline) {
+				skipNewline = false;
+				if (c == '\n') {
+					scan = ++position;
+					continue;
+				}
+			}
+			if (c == '\n' || c == '\r') {
+				String line = new String(buffer, position, scan - position);
+				position = scan + 1;
+				skipNewline = c == '\r';
+				return line;
+			}
+			scan++;
+		}
+
+		// The last line need not end with a newline
+		if (position == limit)
+			return null;
+		String line = new String(buffer, position, limit - position);
+		position = limit;
+		return line;
+	}
+
+	/**
+	 * Read more text after the text that has not been consumed yet.
+	 * 
+	 * @return false at the end of the input
+	 */
+	private boolean fill() {
+		if (ended)
+			return false;
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		try {
+			int n = in.read(buffer, limit, buffer.length - limit);
+			if (n < 0) {
+				ended = true;
+				return false;
+			}
+			limit += n;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,33 @@
+package class_runtime;
+
+import java.util.List;
+
+/**
+ * An InputSource that reads values from a list held in memory. Numbers are
+ * read as numbers and anything else as the value of its text, so a data set
+ * is converted once, when the ListInput is made.
+ */
+public class ListInput implements InputSource {
+	private final Value[] values;
+	private int next = 0;
+
+	public ListInput(List<?> items) {
+		values = new Value[items.size()];
+		for (int i = 0; i < values.length; i++) {
+			Object item = items.get(i);
+			if (item instanceof Value)
+				values[i] = (Value) item;
+			else if (item instanceof Long || item instanceof Integer || item instanceof Short || item instanceof Byte)
+				values[i] = IntegerValue.valueOf(((Number) item).longValue());
+			else if (item instanceof Number)
+				values[i] = NumberValue.of(((Number) item).doubleValue());
+			else
+				values[i] = Value.fromText(String.valueOf(item));
+		}
+	}
+
+	@Override
+	public Value next() {
+		return next < values.length ? values[next++] : null;
+	}
+}
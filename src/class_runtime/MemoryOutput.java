@@ -0,0 +1,35 @@
+package class_runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OutputSink that keeps everything a program writes in memory, e.g. to
+ * compare it with the expected output.
+ */
+public class MemoryOutput implements OutputSink {
+	private final ArrayList<String> lines = new ArrayList<>();
+
+	@Override
+	public void println(String line) {
+		lines.add(line);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Get the output as text, every line ending with a newline.
+	 */
+	public String getText() {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines)
+			text.append(line).append('\n');
+		return text.toString();
+	}
+
+	public List<String> getLines() {
+		return lines;
+	}
+}
@@ -0,0 +1,17 @@
+package class_runtime;
+
+/**
+ * The value returned by a function that ends without an explicit return.
+ * There is only one instance, NONE.
+ */
+public final class NoneValue extends Value {
+	public static final NoneValue NONE = new NoneValue();
+
+	private NoneValue() {
+	}
+
+	@Override
+	public String toString() {
+		return "None";
+	}
+}
@@ -0,0 +1,83 @@
+package class_runtime;
+
+/**
+ * A numeric value. Jiffy numbers are doubles, except that integral numbers
+ * are IntegerValues when they come from NumberValue.of; integral values are
+ * shown without the trailing .0.
+ */
+public final class NumberValue extends Value {
+	private final double value;
+
+	public NumberValue(double value) {
+		this.value = value;
+	}
+
+	/**
+	 * Make the value of a number: an IntegerValue if it is integral and every
+	 * integer up to it is exact as a double, a NumberValue otherwise. -0.0
+	 * stays a double, so that 1/-0.0 is still -Infinity.
+	 */
+	public static Value of(double d) {
+		long x = (long) d;
+		if (x == d && Math.abs(x) <= MAX_EXACT && (x != 0 || Double.doubleToRawLongBits(d) == 0))
+			return IntegerValue.valueOf(x);
+		return new NumberValue(d);
+	}
+
+	/**
+	 * 2^53: every integer of at most this size is exact as a double.
+	 */
+	public static final long MAX_EXACT = 1L << 53;
+
+	/**
+	 * Whether an engine can hold a number as a bare double and compute with
+	 * double arithmetic and still get the results of Arithmetic: the number is
+	 * below 2^53, where integers are exact and NumberValue.of tells integers
+	 * from other numbers, and it is not -0.0, which stays a NumberValue.
+	 */
+	public static boolean isExact(double d) {
+		return Math.abs(d) < MAX_EXACT && Double.doubleToRawLongBits(d) != Long.MIN_VALUE;
+	}
+
+	@Override
+	public boolean isNumber() {
+		return true;
+	}
+
+	@Override
+	public double toDouble() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return format(value);
+	}
+
+	// Equal values are the same double, bit for bit, so 0.0 and -0.0 differ
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof NumberValue
+				&& Double.doubleToLongBits(value) == Double.doubleToLongBits(((NumberValue) o).value);
+	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode(value);
+	}
+
+	/**
+	 * Format a double the way write shows it: integral values up to 2^53 are
+	 * shown as integers, without the trailing .0.
+	 * 
+	 * @param d the number to format
+	 * @return the text of the number
+	 */
+	public static String format(double d) {
+		long x = (long) d;
+		if (x == d && Math.abs(x) <= MAX_EXACT)
+			return Long.toString(x);
+		else
+			return Double.toString(d);
+	}
+}
@@ -0,0 +1,18 @@
+package class_runtime;
+
+/**
+ * An OutputSink receives what a program writes. Write statements each add one
+ * line; a sink may hold the lines back until it is flushed, and engines flush
+ * it when the program ends and before they wait for input from the console.
+ */
+public interface OutputSink {
+	/**
+	 * Add the text of one write statement, followed by a newline.
+	 */
+	public void println(String line);
+
+	/**
+	 * Pass on any text held back.
+	 */
+	public void flush();
+}
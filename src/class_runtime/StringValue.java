@@ -0,0 +1,96 @@
+package class_runtime;
+
+import java.util.ArrayDeque;
+
+/**
+ * A string value. The text is held without the surrounding quotes.
+ *
+ * A string made by concatenation is a rope: it keeps its two halves and only
+ * copies them into one String when its text is needed, e.g. to write or
+ * compare it, so building a long string one piece at a time takes linear
+ * time. After that the string holds the text and lets go of the halves.
+ */
+public final class StringValue extends Value {
+	// Strings shorter than this are concatenated right away
+	private static final int MIN_ROPE_LENGTH = 64;
+
+	// Either the text, or the two StringValues of a concatenation. Flattening
+	// replaces the halves with the text in a single write, so a string can be
+	// read by other threads while it is flattened.
+	private Object content;
+	private final int length;
+
+	public StringValue(String text) {
+		this.content = text;
+		this.length = text.length();
+	}
+
+	private StringValue(StringValue left, StringValue right, int length) {
+		this.content = new StringValue[] { left, right };
+		this.length = length;
+	}
+
+	/**
+	 * Concatenate two values as strings.
+	 */
+	public static StringValue concat(Value left, Value right) {
+		StringValue l = valueOf(left);
+		StringValue r = valueOf(right);
+		if (l.length == 0)
+			return r;
+		if (r.length == 0)
+			return l;
+		int length = Math.addExact(l.length, r.length);
+		if (length < MIN_ROPE_LENGTH)
+			return new StringValue(l.toString() + r.toString());
+		return new StringValue(l, r, length);
+	}
+
+	private static StringValue valueOf(Value v) {
+		return v instanceof StringValue ? (StringValue) v : new StringValue(v.toString());
+	}
+
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		Object c = content;
+		if (c instanceof String)
+			return (String) c;
+
+		// Copy the leaves from left to right. Ropes built in a loop are deep,
+		// so the tree is walked with a stack of its own.
+		char[] chars = new char[length];
+		int position = 0;
+		ArrayDeque<StringValue> pending = new ArrayDeque<StringValue>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			Object part = pending.pop().content;
+			if (part instanceof String) {
+				String s = (String) part;
+				s.getChars(0, s.length(), chars, position);
+				position += s.length();
+			} else {
+				StringValue[] halves = (StringValue[]) part;
+				pending.push(halves[1]);
+				pending.push(halves[0]);
+			}
+		}
+		String text = new String(chars);
+		content = text;
+		return text;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof StringValue && length == ((StringValue) o).length
+				&& toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
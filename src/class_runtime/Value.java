@@ -0,0 +1,109 @@
+package class_runtime;
+
+import java.math.BigInteger;
+
+/**
+ * Value is the base class of every runtime value manipulated by a Jiffy
+ * program. A value is either a number, a string or None. Values are immutable,
+ * so they can be shared freely between value tables, stack slots and tree
+ * nodes.
+ */
+public abstract class Value {
+
+	/**
+	 * Report whether this value is numeric. Arithmetic and comparisons only
+	 * accept numeric operands.
+	 * 
+	 * @return true if this value is a number
+	 */
+	public boolean isNumber() {
+		return false;
+	}
+
+	/**
+	 * Return the numeric value of this value. Only numbers can be converted.
+	 * 
+	 * @return the value as a double
+	 * @throws NumberFormatException if this value is not a number
+	 */
+	public double toDouble() {
+		throw new NumberFormatException("Not a number: " + toString());
+	}
+
+	/**
+	 * Return the text of this value as shown by write or used by string
+	 * concatenation.
+	 */
+	public abstract String toString();
+
+	/**
+	 * Convert text coming from outside the program (e.g. read) to a value. Text
+	 * that looks like a number becomes a number, anything else becomes a string.
+	 * 
+	 * @param text the text to convert
+	 * @return the corresponding value
+	 */
+	public static Value fromText(String text) {
+		int length = text.length();
+		if (length == 0 || !mayStartNumber(text.charAt(0)))
+			return new StringValue(text);
+
+		// Plain decimals of up to 15 digits, such as 42 or -3.25, are exact as
+		// doubles, and so is their quotient by a power of ten
+		int i = 0;
+		boolean negative = false;
+		char c = text.charAt(0);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			i++;
+		}
+		long digits = 0;
+		int count = 0;
+		int scale = -1; // digits after the point, -1 if there is no point
+		for (; i < length && count <= 15; i++) {
+			c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = digits * 10 + (c - '0');
+				count++;
+				if (scale >= 0)
+					scale++;
+			} else if (c == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == length && count > 0 && count <= 15) {
+			if (scale <= 0 && !(negative && digits == 0))
+				return IntegerValue.valueOf(negative ? -digits : digits);
+			double d = scale > 0 ? digits / POWERS_OF_TEN[scale] : digits;
+			return NumberValue.of(negative ? -d : d);
+		}
+
+		// Longer integers are kept exact, as longs or BigIntegers
+		if (scale < 0 && count > 15) {
+			try {
+				return BigIntegerValue.of(new BigInteger(text));
+			} catch (NumberFormatException e) {
+				// not an integer
+			}
+		}
+
+		try {
+			return NumberValue.of(Double.parseDouble(text));
+		} catch (NumberFormatException e) {
+			return new StringValue(text);
+		}
+	}
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15 };
+
+	/**
+	 * Can Double.parseDouble accept text that starts with c? It skips leading
+	 * white space and takes a sign, digits, a point, NaN or Infinity.
+	 */
+	private static boolean mayStartNumber(char c) {
+		return c <= ' ' || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'N' || c == 'I';
+	}
+}
@@ -0,0 +1,170 @@
+package class_testing;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_interpreter.CompiledProgram;
+import class_interpreter.ExecutionProfiler;
+import class_interpreter.ExecutionResult;
+import class_interpreter.Interpreter;
+import class_interpreter.ScriptExecutor;
+import class_optimizer.MemoCache;
+import class_parser.JiffyParser;
+import class_runtime.IntegerValue;
+import class_runtime.LineInput;
+import class_runtime.MemoryOutput;
+import class_runtime.Value;
+
+/**
+ * Checks of the ways a compiled program is executed, each printed as passed or
+ * failed.
+ */
+public class TestExpExecution {
+	private static int testNumber = 1;
+
+	// Pure, so it is memoized, and called with read input, so it is not folded
+	private static final String FIB = "fun fib(n) {if (n < 2) {return n;} return fib(n - 1) + fib(n - 2);}"
+			+ " fun main() {read(n); write(fib(n));}";
+
+	public static void main(String[] args) throws Exception {
+		testMemoization();
+		testReuse();
+		testPrivateTree();
+		testConcurrentRuns();
+	}
+
+	private static void testMemoization() throws Exception {
+		MemoCache cache = new MemoCache("f", 2);
+		Value[] one = { IntegerValue.valueOf(1) };
+		Value[] two = { IntegerValue.valueOf(2) };
+		Value[] three = { IntegerValue.valueOf(3) };
+		cache.put(one, IntegerValue.valueOf(10));
+		cache.put(two, IntegerValue.valueOf(20));
+		cache.get(one); // two is now the least recently used
+		cache.put(three, IntegerValue.valueOf(30));
+		testEquals("memo cache keeps its capacity", cache.size(), 2);
+		testEquals("memo cache evicts the least recently used", cache.get(two), null);
+		testEquals("memo cache keeps a recently used result", cache.get(one), 10);
+		testEquals("memo cache counts hits and misses", cache.getHits() + "/" + cache.getMisses(), "2/1");
+
+		Interpreter.setMemoize(true);
+		Interpreter.setMemoCapacity(8);
+		try {
+			CompiledProgram program = Interpreter.compile(FIB);
+			MemoryOutput output = new MemoryOutput();
+			ExecutionResult result = program.execute(new LineInput(new StringReader("30\n")), output);
+			testEquals("memoized fib(30)", output.getText().trim(), 832040);
+			MemoCache fib = result.getMemoCaches().iterator().next();
+			testEquals("memoized fib(30) is bounded", fib.size(), 8);
+			testEquals("memoized fib(30) has hits", fib.getHits() > 0, true);
+
+			// sq is reached only by tail calls, the second one a hit
+			program = Interpreter.compile("fun sq(n) {return n * n;} fun f(n) {return sq(n);} fun g(n) {return sq(n);}"
+					+ " fun main() {read(n); write(f(n)); write(g(n));}");
+			output = new MemoryOutput();
+			result = program.execute(new LineInput(new StringReader("7\n")), output);
+			testEquals("memoized tail calls", output.getLines(), "[49, 49]");
+			for (MemoCache memo : result.getMemoCaches()) {
+				if (memo.getName().equals("sq"))
+					testEquals("memo of a function reached by tail calls", memo.size() + "/" + memo.getHits(), "1/1");
+			}
+		} finally {
+			Interpreter.setMemoize(false);
+			Interpreter.setMemoCapacity(MemoCache.DEFAULT_CAPACITY);
+		}
+	}
+
+	private static void testReuse() throws Exception {
+		CompiledProgram program = Interpreter.compile(FIB);
+		testEquals("first run of a compiled program", program.execute("10\n").trim(), 55);
+		testEquals("second run of a compiled program", program.execute("20\n").trim(), 6765);
+		try {
+			program.execute("");
+			testEquals("run without input fails", "no error", "an error");
+		} catch (JiffyError e) {
+			testEquals("run without input fails", e.getMessage(), "No more input for read(n)");
+		}
+		testEquals("run after a failed run", program.execute("10\n").trim(), 55);
+
+		// Code compiled in one run is kept for the next ones
+		program = Interpreter.compile("fun inc(x) {return x + 1;} fun main() {read(n); i = 0; while (i < n) {i = inc(i);}"
+				+ " write(i);}");
+		testEquals("compiled functions before a run", program.getCompiledFunctions(), "[]");
+		testEquals("run that compiles a function", program.execute("5000\n").trim(), 5000);
+		testEquals("compiled functions after a run", program.getCompiledFunctions(), "[inc]");
+		testEquals("run with the compiled function", program.execute("3\n").trim(), 3);
+		testEquals("compiled functions of a new compilation", Interpreter.compile(FIB).getCompiledFunctions(), "[]");
+	}
+
+	private static void testPrivateTree() throws Exception {
+		// Without the optimizer, which copies the tree anyway, the parse tree is
+		// still left as the parser made it
+		JiffyParser jp = new JiffyParser(new StringReader(FIB), false);
+		TreeNode fib = jp.getFuncs().get("fib");
+		Interpreter.setOptimize(false);
+		try {
+			CompiledProgram first = Interpreter.compile(jp);
+			testEquals("parse tree after compiling it", fib.isFrozen() + " " + fib.getFrameSize(), "false 0");
+			CompiledProgram second = Interpreter.compile(jp);
+			testEquals("first compilation of a parse tree", first.execute("10\n").trim(), 55);
+			testEquals("second compilation of a parse tree", second.execute("20\n").trim(), 6765);
+		} finally {
+			Interpreter.setOptimize(true);
+		}
+
+		TreeNode node = new TreeNode("x");
+		node.freeze();
+		try {
+			node.setSlot(0);
+			testEquals("change of a frozen tree fails", "no error", "an error");
+		} catch (IllegalStateException e) {
+			testEquals("change of a frozen tree fails", e.getMessage(), "A frozen TreeNode cannot be changed: x");
+		}
+		testEquals("copy of a frozen tree", node.copy().isFrozen(), false);
+	}
+
+	private static void testConcurrentRuns() throws Exception {
+		CompiledProgram program = Interpreter.compile(FIB);
+		int runs = 8;
+		ArrayList<MemoryOutput> outputs = new ArrayList<>();
+		ArrayList<Future<ExecutionResult>> results = new ArrayList<>();
+		Interpreter.setProfiling(true);
+		try (ScriptExecutor executor = new ScriptExecutor(4)) {
+			for (int i = 0; i < runs; i++) {
+				MemoryOutput output = new MemoryOutput();
+				outputs.add(output);
+				results.add(executor.submit(program, new LineInput(new StringReader((10 + i) + "\n")), output));
+			}
+		} finally {
+			Interpreter.setProfiling(false);
+		}
+
+		// fib(n) makes 2 * fib(n + 1) - 1 calls of fib
+		int[] fib = new int[20];
+		fib[1] = 1;
+		for (int i = 2; i < fib.length; i++)
+			fib[i] = fib[i - 1] + fib[i - 2];
+		for (int i = 0; i < runs; i++) {
+			int n = 10 + i;
+			testEquals("concurrent run of fib(" + n + ")", outputs.get(i).getText().trim(), fib[n]);
+			long calls = 0;
+			for (ExecutionProfiler.FunctionStats stats : results.get(i).get().getProfile().getFunctions()) {
+				if (stats.getName().equals("fib"))
+					calls = stats.getCalls();
+			}
+			testEquals("profile of its own run of fib(" + n + ")", calls, 2 * fib[n + 1] - 1);
+		}
+	}
+
+	private static void testEquals(String name, Object actual, Object expected) {
+		String message = "\tTest " + testNumber + ". " + name + ": ";
+		if (String.valueOf(actual).equals(String.valueOf(expected)))
+			System.out.println(message + "passed");
+		else
+			System.err.println(message + "failed, expected " + expected + " but got " + actual);
+		testNumber++;
+	}
+}
@@ -0,0 +1,126 @@
+package class_testing;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_interpreter.CompiledProgram;
+import class_interpreter.Interpreter;
+import class_interpreter.Linker;
+import class_nodes.NodeInterpreter;
+import class_nodes.NodeProgram;
+import class_parser.JiffyParser;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.IntegerValue;
+import class_runtime.LineInput;
+import class_runtime.ListInput;
+import class_runtime.MemoryOutput;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * Checks of the sources that read statements take their values from and of
+ * the sinks that write statements add lines to, each printed as passed or
+ * failed.
+ */
+public class TestExpInputOutput {
+	private static int testNumber = 1;
+
+	public static void main(String[] args) throws Exception {
+		testOutput();
+		testInput();
+	}
+
+	private static void testOutput() throws Exception {
+		ArrayList<String> batches = new ArrayList<>();
+		BufferedOutput buffered = new BufferedOutput(batches::add, 10, null);
+		buffered.println("abc");
+		testEquals("buffered output holds a line back", batches.size(), 0);
+		buffered.println("defgh");
+		testEquals("buffered output passes on a full buffer", batches, "[abc\ndefgh\n]");
+		buffered.println("ij");
+		buffered.close();
+		// The first batch must not change when the buffer is reused
+		testEquals("buffered output passes on the rest when closed", batches, "[abc\ndefgh\n, ij\n]");
+
+		String program = "fun main() {i = 0; while (i < 50) {write(i * i); i = i + 1;} write(\"done\");}";
+		CompiledProgram compiled = Interpreter.compile(program);
+		MemoryOutput memory = new MemoryOutput();
+		compiled.execute(new ListInput(new ArrayList<>()), memory);
+		testEquals("memory output keeps every line", memory.getLines().size(), 51);
+		testEquals("memory output keeps each line", memory.getLines().get(7), 49);
+		StringBuilder text = new StringBuilder();
+		buffered = new BufferedOutput(text::append, 16, null);
+		compiled.execute(new ListInput(new ArrayList<>()), buffered);
+		testEquals("buffered output of a run equals memory output", text, memory.getText());
+
+		MemoryOutput nodeOutput = new MemoryOutput();
+		NodeInterpreter nodes = new NodeInterpreter();
+		nodes.setOutput(nodeOutput);
+		nodes.run(nodeProgram(program));
+		testEquals("node interpreter output equals memory output", nodeOutput.getText(), memory.getText());
+	}
+
+	private static void testInput() throws Exception {
+		// Every line end, an empty line and a last line without an end
+		LineInput lines = new LineInput(new StringReader("42\r\n-3.25\rhello\n\n123456789012345678901234567890\nlast"));
+		testEquals("line input reads", readAll(lines),
+				"[IntegerValue 42, NumberValue -3.25, StringValue hello, StringValue , "
+						+ "BigIntegerValue 123456789012345678901234567890, StringValue last]");
+		testEquals("line input ends with null", lines.next(), null);
+
+		ListInput list = new ListInput(Arrays.asList(7L, 2.5, "word", "99999999999999999999", 3));
+		testEquals("list input reads", readAll(list),
+				"[IntegerValue 7, NumberValue 2.5, StringValue word, BigIntegerValue 99999999999999999999, IntegerValue 3]");
+		testEquals("list input ends with null", list.next(), null);
+
+		CompiledProgram program = Interpreter.compile("fun main() {read(a); read(b); write(a + b);}");
+		MemoryOutput output = new MemoryOutput();
+		program.execute(new ListInput(Arrays.asList("99999999999999999999", 1)), output);
+		testEquals("list input read by a program", output.getText().trim(), "100000000000000000000");
+		output = new MemoryOutput();
+		program.execute(new LineInput(new StringReader("ab\ncd\n")), output);
+		testEquals("line input read by a program", output.getText().trim(), "abcd");
+
+		output = new MemoryOutput();
+		NodeInterpreter nodes = new NodeInterpreter();
+		nodes.setInput(new ListInput(Arrays.asList("99999999999999999999", 1)));
+		nodes.setOutput(output);
+		nodes.run(nodeProgram("fun main() {read(a); read(b); write(a + b);}"));
+		testEquals("list input read by the node interpreter", output.getText().trim(), "100000000000000000000");
+		nodes.setInput(new ListInput(Arrays.asList(1)));
+		try {
+			nodes.run(nodeProgram("fun main() {read(a); read(b); write(a + b);}"));
+			testEquals("node interpreter run past the input fails", "no error", "an error");
+		} catch (JiffyError e) {
+			testEquals("node interpreter run past the input fails", e.getMessage(), "No more input for read");
+		}
+	}
+
+	private static NodeProgram nodeProgram(String programText) {
+		HashMap<String, TreeNode> funcs = new JiffyParser(programText, false).getFuncs();
+		Linker.link(funcs);
+		return new NodeProgram(funcs);
+	}
+
+	private static ArrayList<String> readAll(InputSource input) {
+		ArrayList<String> values = new ArrayList<>();
+		Value value;
+		while ((value = input.next()) != null)
+			values.add(value.getClass().getSimpleName() + " " + value);
+		return values;
+	}
+
+	private static void testEquals(String name, Object actual, Object expected) {
+		String message = "\tTest " + testNumber + ". " + name + ": ";
+		if (String.valueOf(actual).equals(String.valueOf(expected)))
+			System.out.println(message + "passed");
+		else
+			System.err.println(message + "failed, expected " + expected + " but got " + actual);
+		testNumber++;
+	}
+}
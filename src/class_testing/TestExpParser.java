@@ -1,8 +1,19 @@
 package class_testing;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
 import class_helper.FileProcessor;
 import class_helper.ParseTree;
+import class_helper.TreeNode;
+import class_optimizer.Optimizer;
+import class_parser.AstCache;
 import class_parser.JiffyParser;
+import class_parser.ProgramModel;
 
 public class TestExpParser {
 	private static int testNumber = 1;
@@ -41,6 +52,162 @@ public class TestExpParser {
 				"\n                                                          \"None\"\n                                                return....|\n                                  stmnt_list....|\n                                                               2.0\n                                                          ^....|\n                                                                    4.0\n                                                               -....|\n                                                                    2.0\n                                                     +....|\n                                                                    2.0\n                                                               /....|\n                                                                    6.0\n                                                          +....|\n                                                                    5.0\n                                                               -....|\n                                                                              4.0\n                                                                         /....|\n                                                                                   3.0\n                                                                              ^....|\n                                                                                   2.0\n                                                                    +....|\n                                                                         1.0\n                                                =....|\n                                                     num5\n                         block....|\n           fun main()....|\nprogram....|");
 		testEquals(parseTest("fun main(){num6 = 1+2^3/4-5+6/2+(2-4)^2$6;}"),
 				"\n                                                          \"None\"\n                                                return....|\n                                  stmnt_list....|\n                                                          6.0\n                                                     $....|\n                                                                    2.0\n                                                               ^....|\n                                                                         4.0\n                                                                    -....|\n                                                                         2.0\n                                                          +....|\n                                                                         2.0\n                                                                    /....|\n                                                                         6.0\n                                                               +....|\n                                                                         5.0\n                                                                    -....|\n                                                                                   4.0\n                                                                              /....|\n                                                                                        3.0\n                                                                                   ^....|\n                                                                                        2.0\n                                                                         +....|\n                                                                              1.0\n                                                =....|\n                                                     num6\n                         block....|\n           fun main()....|\nprogram....|");
+
+		// An incremental parse must give the tree and lines of a fresh one
+		String program = "fun main(){\n a = f(1);\n write(a);\n}\nfun f(x){\n return x + 1;\n}\nfun g(y){\n return y * 2;\n}\n";
+		updateTest(program, program.replace("return x + 1;", "b = x;\n c = b * 3;\n return c + 1;"), null);
+		updateTest(program, program.replace("a = f(1);", "a = f(1);\n a = g(a);"), null);
+		updateTest(program, program + "fun h(z){\n return z;\n}\n", null);
+		updateTest(program, program.replace("fun g(y){\n return y * 2;\n}\n", ""), null);
+		// A syntax error keeps the last program that parsed
+		updateTest(program, program.replace("return y * 2;", "return y * ;"), program);
+
+		// The optimizer must give the tree of the program it is equivalent to
+		testEquals(optimizeTest("fun main(){a = (4+2)^3; write(a);}"),
+				parseTest("fun main(){a = 216; write(216);}"));
+		String fact = "fun fact(n){if (n < 2) {return 1;} return n * fact(n - 1);}";
+		testEquals(optimizeTest(fact + " fun main(){write(fact(10));}"),
+				parseTest(fact + " fun main(){write(3628800);}"));
+		testEquals(optimizeTest("fun main(){if (1 < 2) {a = 1;} else {a = 2;} write(a);}"),
+				parseTest("fun main(){{a = 1;} write(a);}"));
+		// A loop that never runs is dropped, leaving an empty statement
+		testEquals(optimizeTest("fun main(){while (2 < 1) {write(1);} write(2);}"), parseTest("fun main(){; write(2);}"));
+		// Variables that are assigned twice or read are not constant
+		String twice = "fun main(){a = 1; a = 2; write(a);}";
+		testEquals(optimizeTest(twice), parseTest(twice));
+		String read = "fun main(){a = 1; read(a); write(a);}";
+		testEquals(optimizeTest(read), parseTest(read));
+		// Calls that run too long or fail at compile time are left for run time
+		String spin = "fun spin(n){i = 0; while (i < n) {i = i + 1;} return i;} fun main(){write(spin(1000000));}";
+		testEquals(optimizeTest(spin), parseTest(spin));
+		String down = "fun down(n){return down(n + 1) + 1;} fun main(){write(down(0));}";
+		testEquals(optimizeTest(down), parseTest(down));
+		String bad = "fun bad(s){return s - 1;} fun main(){write(bad(\"x\"));}";
+		testEquals(optimizeTest(bad), parseTest(bad));
+
+		// A program of several chunks parses in parallel as it does sequentially,
+		// with a function declared twice and with a syntax error in a late chunk
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			big.append("fun f").append(i).append("(x){\n  y = x + ").append(i).append(";\n  return y * 2;\n}\n");
+		big.append("fun f0(x){\n  return x;\n}\nfun main(){\n  a = f999(1);\n  write(a);\n}\n");
+		parallelTest(big.toString());
+		int late = big.indexOf("y = x + 900;");
+		parallelTest(big.replace(late, late + "y = x + 900;".length(), "y = x + 900").toString());
+
+		// A cached program must load as the tree, functions and lines it was parsed as
+		Path dir = Files.createTempDirectory("jifc");
+		try {
+			File source = dir.resolve("prog.jif").toFile();
+			Files.writeString(source.toPath(), program);
+			byte[] hash = AstCache.hash(source);
+			File cacheFile = AstCache.cacheFile(source, hash);
+			JiffyParser fresh = new JiffyParser(program, false);
+			AstCache.store(cacheFile, hash, fresh.getAST(), fresh.getFuncs());
+			cacheTest(cacheFile, hash, fresh);
+
+			// Threads storing the same program at once must leave a whole file
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(() -> AstCache.store(cacheFile, hash, fresh.getAST(), fresh.getFuncs()));
+				threads[i].start();
+			}
+			for (Thread t : threads)
+				t.join();
+			cacheTest(cacheFile, hash, fresh);
+			String[] files = dir.toFile().list();
+			Arrays.sort(files);
+			testEquals(Arrays.toString(files), "[prog.jif, prog.jifc]");
+
+			// A changed source or format is a miss
+			byte[] otherHash = hash.clone();
+			otherHash[0]++;
+			testEquals(String.valueOf(AstCache.load(cacheFile, otherHash, new HashMap<>())), "null");
+			byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+			bytes[7]++; // the low byte of the format version
+			Files.write(cacheFile.toPath(), bytes);
+			testEquals(String.valueOf(AstCache.load(cacheFile, hash, new HashMap<>())), "null");
+		} finally {
+			for (File f : dir.toFile().listFiles())
+				f.delete();
+			Files.delete(dir);
+		}
+	}
+
+	/**
+	 * Parse a program in parallel and compare its tree, the lines of all its
+	 * nodes, its functions and its error with those of the sequential parser.
+	 */
+	private static void parallelTest(String program) {
+		System.out.println(testNumber + ". Parsing " + program.length() + " characters in parallel");
+		JiffyParser parallel = JiffyParser.parseParallel(program);
+		JiffyParser fresh = new JiffyParser(program, false);
+		testEquals(String.valueOf(parallel.getErrorMessage()), String.valueOf(fresh.getErrorMessage()));
+		testEquals(String.valueOf(parallel.getAST()), String.valueOf(fresh.getAST()));
+		if (fresh.getAST() == null)
+			return;
+		testEquals(nodeLines(parallel.getAST().getRootNode()), nodeLines(fresh.getAST().getRootNode()));
+		// The functions must be the nodes of the tree, the last of a name winning
+		HashMap<String, TreeNode> last = new HashMap<>();
+		for (TreeNode f : parallel.getAST().getRootNode().getChildren())
+			last.put(f.getName(), f);
+		boolean same = last.size() == parallel.getFuncs().size();
+		for (TreeNode f : last.values())
+			same &= parallel.getFuncs().get(f.getName()) == f;
+		testEquals(functionLines(parallel.getFuncs()) + " " + same, functionLines(fresh.getFuncs()) + " true");
+	}
+
+	/**
+	 * Load a cached program and compare its tree, the lines of all its nodes
+	 * and its functions with the program it was made from.
+	 */
+	private static void cacheTest(File cacheFile, byte[] hash, JiffyParser fresh) {
+		System.out.println(testNumber + ". Loading " + cacheFile);
+		HashMap<String, TreeNode> funcs = new HashMap<>();
+		ParseTree pt = AstCache.load(cacheFile, hash, funcs);
+		testEquals(String.valueOf(pt), fresh.getAST().toString());
+		testEquals(nodeLines(pt.getRootNode()), nodeLines(fresh.getAST().getRootNode()));
+		// The functions must be the nodes of the tree, not copies
+		boolean same = funcs.size() == fresh.getFuncs().size();
+		for (TreeNode f : pt.getRootNode().getChildren())
+			same &= funcs.get(f.getName()) == f;
+		testEquals(functionLines(funcs) + " " + same, functionLines(fresh.getFuncs()) + " true");
+	}
+
+	private static String nodeLines(TreeNode node) {
+		if (node == null)
+			return "-";
+		StringBuilder lines = new StringBuilder().append(node.getLine());
+		for (TreeNode child : node.getChildren())
+			lines.append(' ').append(nodeLines(child));
+		return lines.toString();
+	}
+
+	private static String optimizeTest(String exp) {
+		System.out.println(testNumber + ". Optimizing " + exp);
+		return new Optimizer(new JiffyParser(exp, false).getAST()).getAST().toString();
+	}
+
+	/**
+	 * Update a ProgramModel of one version of a program to another and compare
+	 * its tree and the lines of its functions with a fresh parse of the
+	 * expected text, which is the new version unless it is given.
+	 */
+	private static void updateTest(String before, String after, String expected) {
+		System.out.println(testNumber + ". Updating " + before + " to " + after);
+		ProgramModel model = new ProgramModel(before);
+		model.update(after);
+		JiffyParser fresh = new JiffyParser(expected == null ? after : expected, false);
+		testEquals(model.getAST().toString(), fresh.getAST().toString());
+		// The tree does not show lines, which the profiler reports
+		testEquals(functionLines(model.getFuncs()), functionLines(fresh.getFuncs()));
+	}
+
+	private static String functionLines(HashMap<String, TreeNode> funcs) {
+		StringBuilder lines = new StringBuilder();
+		for (String name : new TreeMap<>(funcs).keySet())
+			lines.append(name).append(':').append(funcs.get(name).getLine()).append(' ');
+		return lines.toString().trim();
 	}
 
 	private static String parseTest(String exp) {
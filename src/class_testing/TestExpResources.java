@@ -0,0 +1,105 @@
+package class_testing;
+
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import class_interpreter.CompiledProgram;
+import class_interpreter.ExecutionProfiler;
+import class_interpreter.ExecutionResult;
+import class_interpreter.Interpreter;
+import class_interpreter.ResourceLimitError;
+import class_interpreter.ResourceLimits;
+import class_runtime.LineInput;
+import class_runtime.ListInput;
+import class_runtime.MemoryOutput;
+
+/**
+ * Checks of what a run reports about the resources it uses and of the limits
+ * that stop it, each printed as passed or failed.
+ */
+public class TestExpResources {
+	private static int testNumber = 1;
+
+	// Called with read input, so it is not folded
+	private static final String FIB = "fun fib(n) {if (n < 2) {return n;} return fib(n - 1) + fib(n - 2);}"
+			+ " fun main() {read(n); write(fib(n));}";
+
+	public static void main(String[] args) throws Exception {
+		testProfile();
+		testLimits();
+	}
+
+	private static void testProfile() throws Exception {
+		String program = "fun fib(n) {\n if (n < 2) {\n  return n;\n }\n return fib(n - 1) + fib(n - 2);\n}\n"
+				+ "fun main() {\n read(n);\n write(fib(n));\n}\n";
+		CompiledProgram compiled = Interpreter.compile(program);
+		ExecutionResult result = compiled.execute(new LineInput(new StringReader("10\n")), new MemoryOutput());
+		testEquals("no profile unless profiling is on", result.getProfile(), null);
+
+		Interpreter.setProfiling(true);
+		try {
+			result = compiled.execute(new LineInput(new StringReader("10\n")), new MemoryOutput());
+		} finally {
+			Interpreter.setProfiling(false);
+		}
+		ExecutionProfiler profile = result.getProfile();
+		ArrayList<String> functions = new ArrayList<>();
+		for (ExecutionProfiler.FunctionStats stats : profile.getFunctions())
+			functions.add(stats.getName() + ":" + stats.getLine() + " " + stats.getCalls());
+		testEquals("profiled function calls", functions, "[main:7 1, fib:1 177]");
+		// fib(10) has 89 leaves and 88 inner calls
+		ArrayList<String> lines = new ArrayList<>();
+		for (ExecutionProfiler.LineStats stats : profile.getLines())
+			lines.add(stats.getFunction() + ":" + stats.getLine() + " " + stats.getHits());
+		testEquals("profiled line hits", lines, "[fib:2 177, fib:3 89, fib:5 88, main:8 1, main:9 1]");
+		ArrayList<ExecutionProfiler.FunctionStats> stats = new ArrayList<>(profile.getFunctions());
+		testEquals("main includes the time of fib",
+				stats.get(0).getInclusiveNanos() >= stats.get(1).getInclusiveNanos() + stats.get(0).getSelfNanos(), true);
+		testEquals("call paths start at main", profile.collapsedStacks().startsWith("main"), true);
+	}
+
+	private static void testLimits() throws Exception {
+		String loop = "fun main() {i = 0; while (1 < 2) {i = i + 1;}}";
+		String tailLoop = "fun loop(n) {return loop(n + 1);} fun main() {x = loop(0);}";
+		String recursion = "fun down(n) {return 1 + down(n + 1);} fun main() {write(down(0));}";
+		String growth = "fun main() {s = \"x\"; while (1 < 2) {s = s + s;}}";
+		testLimit("endless loop", loop, ResourceLimits.NONE.withFuel(10000), ResourceLimitError.Resource.FUEL);
+		testLimit("endless tail loop", tailLoop, ResourceLimits.NONE.withFuel(10000), ResourceLimitError.Resource.FUEL);
+		testLimit("endless loop", loop, ResourceLimits.NONE.withTimeout(Duration.ofMillis(100)),
+				ResourceLimitError.Resource.TIME);
+		testLimit("endless recursion", recursion, ResourceLimits.NONE.withMaxCallDepth(100),
+				ResourceLimitError.Resource.CALL_DEPTH);
+		testLimit("growing string", growth, ResourceLimits.NONE.withMaxMemory(1 << 20),
+				ResourceLimitError.Resource.MEMORY);
+
+		ResourceLimits all = ResourceLimits.NONE.withFuel(10000000).withTimeout(Duration.ofSeconds(30))
+				.withMaxCallDepth(100).withMaxMemory(64 << 20);
+		MemoryOutput output = new MemoryOutput();
+		Interpreter.compile(FIB).execute(new LineInput(new StringReader("15\n")), output, all);
+		testEquals("program within its limits", output.getText().trim(), 610);
+	}
+
+	private static void testLimit(String name, String program, ResourceLimits limits,
+			ResourceLimitError.Resource resource) throws Exception {
+		CompiledProgram compiled = Interpreter.compile(program);
+		Object stopped;
+		try {
+			compiled.execute(new ListInput(new ArrayList<>()), new MemoryOutput(), limits);
+			stopped = "no error";
+		} catch (ResourceLimitError e) {
+			stopped = e.getResource();
+		}
+		String limit = resource.name().toLowerCase().replace('_', ' ');
+		testEquals(name + " stopped by the " + limit + " limit", stopped, resource);
+	}
+
+	private static void testEquals(String name, Object actual, Object expected) {
+		String message = "\tTest " + testNumber + ". " + name + ": ";
+		if (String.valueOf(actual).equals(String.valueOf(expected)))
+			System.out.println(message + "passed");
+		else
+			System.err.println(message + "failed, expected " + expected + " but got " + actual);
+		testNumber++;
+	}
+}
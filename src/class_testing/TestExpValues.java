@@ -0,0 +1,100 @@
+package class_testing;
+
+import class_interpreter.Interpreter;
+import class_runtime.Arithmetic;
+import class_runtime.IntegerValue;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * Checks of runtime values that outgrow a long or a String copy, each printed
+ * as passed or failed.
+ */
+public class TestExpValues {
+	private static int testNumber = 1;
+
+	public static void main(String[] args) throws Exception {
+		testIntegerBoundaries();
+		testRopes();
+	}
+
+	private static void testIntegerBoundaries() throws Exception {
+		Value max = IntegerValue.valueOf(Long.MAX_VALUE);
+		Value min = IntegerValue.valueOf(Long.MIN_VALUE);
+		Value one = IntegerValue.valueOf(1);
+		Value minusOne = IntegerValue.valueOf(-1);
+		testEquals("Long.MAX_VALUE + 1", Arithmetic.apply('+', max, one), "9223372036854775808");
+		testEquals("Long.MIN_VALUE / -1", Arithmetic.apply('/', min, minusOne), "9223372036854775808");
+		testEquals("Long.MIN_VALUE * -1", Arithmetic.apply('*', min, minusOne), "9223372036854775808");
+		testEquals("Long.MIN_VALUE - 1", Arithmetic.apply('-', min, one), "-9223372036854775809");
+		Value back = Arithmetic.apply('-', Arithmetic.apply('+', max, one), one);
+		testEquals("Long.MAX_VALUE + 1 - 1 is a long again", back instanceof IntegerValue && back.equals(max), true);
+
+		// Read, so that nothing is folded, and written as literals, so that it is
+		String read = "fun main() {read(a); write(a + 1); write((0 - a - 1) / (0 - 1)); write(a + 1 - 1);}";
+		String literal = "fun main() {write(9223372036854775807 + 1); write((0 - 9223372036854775807 - 1) / (0 - 1));"
+				+ " write(9223372036854775807 + 1 - 1);}";
+		String expected = "9223372036854775808\n9223372036854775808\n9223372036854775807\n";
+		for (boolean optimize : new boolean[] { false, true }) {
+			Interpreter.setOptimize(optimize);
+			try {
+				String engine = optimize ? " optimized" : "";
+				testEquals("boundaries of read longs" + engine,
+						Interpreter.compile(read).execute("9223372036854775807\n"), expected);
+				testEquals("boundaries of long literals" + engine, Interpreter.compile(literal).execute(""), expected);
+			} finally {
+				Interpreter.setOptimize(true);
+			}
+		}
+
+		// inc is called often enough to be compiled, and compiled code works in
+		// doubles, so it must hand a long past 2^53 back
+		String hot = "fun inc(x) {return x + 1;} fun main() {i = 0; while (i < 20000) {i = inc(i);}"
+				+ " read(a); write(inc(a)); write(inc(inc(9007199254740991)));}";
+		testEquals("boundaries of a compiled function", Interpreter.compile(hot).execute("9223372036854775807\n"),
+				"9223372036854775808\n9007199254740993\n");
+	}
+
+	private static void testRopes() throws Exception {
+		// Built one piece at a time both ways, so the ropes are as deep as can be
+		int pieces = 100000;
+		StringValue appended = new StringValue("");
+		StringValue prepended = new StringValue("");
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < pieces; i++) {
+			appended = StringValue.concat(appended, IntegerValue.valueOf(i));
+			prepended = StringValue.concat(IntegerValue.valueOf(pieces - 1 - i), prepended);
+			expected.append(i);
+		}
+		testEquals("rope length before flattening", appended.length(), expected.length());
+		testEquals("appended rope flattens", appended.toString().equals(expected.toString()), true);
+		testEquals("prepended rope flattens", prepended.toString().equals(expected.toString()), true);
+		testEquals("flattened rope length", appended.length(), expected.length());
+
+		// A rope shared by two others gives both its text, whichever is read first
+		StringValue shared = StringValue.concat(new StringValue("a".repeat(40)), new StringValue("b".repeat(40)));
+		StringValue left = StringValue.concat(new StringValue("<"), shared);
+		StringValue right = StringValue.concat(shared, new StringValue(">"));
+		testEquals("rope with a shared part", right.toString(), "a".repeat(40) + "b".repeat(40) + ">");
+		testEquals("shared part of a rope", shared.toString(), "a".repeat(40) + "b".repeat(40));
+		testEquals("other rope with a shared part", left.toString(), "<" + "a".repeat(40) + "b".repeat(40));
+
+		StringValue rope = StringValue.concat(shared, new StringValue("c"));
+		StringValue flat = new StringValue("a".repeat(40) + "b".repeat(40) + "c");
+		testEquals("rope equals its text", rope.equals(flat) && flat.equals(rope), true);
+		testEquals("rope hashes as its text", rope.hashCode(), flat.hashCode());
+		testEquals("rope differs from other text", rope.equals(new StringValue("a".repeat(81))), false);
+
+		String program = "fun main() {s = \"\"; i = 0; while (i < 5000) {s = s + \"xy\"; i = i + 1;} write(s);}";
+		testEquals("rope built by a program", Interpreter.compile(program).execute("").trim(), "xy".repeat(5000));
+	}
+
+	private static void testEquals(String name, Object actual, Object expected) {
+		String message = "\tTest " + testNumber + ". " + name + ": ";
+		if (String.valueOf(actual).equals(String.valueOf(expected)))
+			System.out.println(message + "passed");
+		else
+			System.err.println(message + "failed, expected " + expected + " but got " + actual);
+		testNumber++;
+	}
+}
@@ -0,0 +1,279 @@
+package class_vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_runtime.NoneValue;
+import class_runtime.NumberValue;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * BytecodeCompiler translates the linked parse tree of each function into
+ * bytecode for the VirtualMachine. Variables are addressed by the slots that
+ * class_interpreter.Linker assigned, so the tree must be linked first.
+ */
+public class BytecodeCompiler {
+	private HashMap<String, Integer> functionIndex = new HashMap<>();
+
+	// State of the function being compiled
+	private int[] code;
+	private int pc;
+	private ArrayList<Double> numbers;
+	private ArrayList<Value> constants;
+	private int depth;
+	private int maxDepth;
+
+	/**
+	 * Compile a linked program.
+	 * 
+	 * @param funcs HashMap of function names and corresponding TreeNode
+	 * @return the compiled program
+	 * @throws JiffyError if the program has no main or calls an unknown function
+	 */
+	public static BytecodeProgram compile(HashMap<String, TreeNode> funcs) throws JiffyError {
+		return new BytecodeCompiler().compileProgram(funcs);
+	}
+
+	private BytecodeProgram compileProgram(HashMap<String, TreeNode> funcs) throws JiffyError {
+		// Number the functions in name order so the output is deterministic
+		TreeMap<String, TreeNode> sorted = new TreeMap<>(funcs);
+		for (String name : sorted.keySet())
+			functionIndex.put(name, functionIndex.size());
+
+		if (!functionIndex.containsKey("main"))
+			throw new JiffyError("No main function");
+
+		CompiledFunction[] functions = new CompiledFunction[sorted.size()];
+		int i = 0;
+		for (String name : sorted.keySet())
+			functions[i++] = compileFunction(name, sorted.get(name));
+
+		return new BytecodeProgram(functions, functionIndex.get("main"));
+	}
+
+	private CompiledFunction compileFunction(String name, TreeNode funcNode) throws JiffyError {
+		code = new int[64];
+		pc = 0;
+		numbers = new ArrayList<>();
+		constants = new ArrayList<>();
+		depth = 0;
+		maxDepth = 0;
+
+		List<TreeNode> children = funcNode.getChildren();
+		int arity = funcNode.getArity();
+		compileStatement(children.get(arity));
+
+		// The parser adds a return at the end of every function body, but be
+		// safe in case control can fall off the end
+		emit(Opcodes.CONSTANT, constant(NoneValue.NONE));
+		emit(Opcodes.RETURN);
+
+		double[] numberPool = new double[numbers.size()];
+		for (int i = 0; i < numberPool.length; i++)
+			numberPool[i] = numbers.get(i);
+
+		return new CompiledFunction(name, arity, funcNode.getFrameSize(), maxDepth, Arrays.copyOf(code, pc),
+				numberPool, constants.toArray(new Value[0]));
+	}
+
+	private void compileStatement(TreeNode node) throws JiffyError {
+		if (node == null) // empty statement
+			return;
+
+		switch (node.getKind()) {
+		case TreeNode.BLOCK:
+			compileStatement(node.getLeft());
+			break;
+		case TreeNode.STATEMENT_LIST:
+			for (TreeNode t : node.getChildren())
+				compileStatement(t);
+			break;
+		case TreeNode.ASSIGN:
+			compileExpression(node.getRight());
+			emit(Opcodes.STORE, node.getLeft().getSlot());
+			break;
+		case TreeNode.WRITE:
+			compileExpression(node.getLeft());
+			emit(Opcodes.WRITE);
+			break;
+		case TreeNode.READ:
+			emit(Opcodes.READ, node.getLeft().getSlot());
+			break;
+		case TreeNode.WHILE:
+			compileWhile(node);
+			break;
+		case TreeNode.IF:
+			compileIf(node);
+			break;
+		case TreeNode.RETURN:
+			if (node.getLeft().isTailCall()) {
+				compileCall(node.getLeft(), Opcodes.TAIL_CALL);
+			} else {
+				compileExpression(node.getLeft());
+				emit(Opcodes.RETURN);
+			}
+			break;
+		default:
+			throw new JiffyError("Unexpected statement " + node.getSymbol());
+		}
+	}
+
+	private void compileWhile(TreeNode node) throws JiffyError {
+		List<TreeNode> children = node.getChildren();
+		int top = pc;
+		int exit = compileCondition(children.get(0));
+		compileStatement(children.get(1));
+		emitJump(Opcodes.JUMP, top);
+		patch(exit);
+	}
+
+	private void compileIf(TreeNode node) throws JiffyError {
+		List<TreeNode> children = node.getChildren();
+		int otherwise = compileCondition(children.get(0));
+		compileStatement(children.get(1));
+		if (children.size() > 2) {
+			int end = emitJump(Opcodes.JUMP, -1);
+			patch(otherwise);
+			compileStatement(children.get(2));
+			patch(end);
+		} else
+			patch(otherwise);
+	}
+
+	/**
+	 * Compile a boolean expression as a conditional jump taken when the
+	 * expression is false.
+	 * 
+	 * @return the position of the jump offset, to be patched with the target
+	 */
+	private int compileCondition(TreeNode node) throws JiffyError {
+		if (node.getChildren().size() < 2)
+			throw new JiffyError("Expected a boolean expression");
+
+		compileExpression(node.getLeft());
+		compileExpression(node.getRight());
+
+		switch (node.getOperator()) {
+		case '<':
+			return emitJump(Opcodes.IF_NOT_LT, -1);
+		case '>':
+			return emitJump(Opcodes.IF_NOT_GT, -1);
+		case '?':
+			return emitJump(Opcodes.IF_NOT_EQ, -1);
+		}
+
+		// Anything else is always true, like in the interpreter, but both sides
+		// are still evaluated. Return a jump that can never be reached.
+		emit(Opcodes.POP);
+		emit(Opcodes.POP);
+		int skip = emitJump(Opcodes.JUMP, -1);
+		int never = emitJump(Opcodes.JUMP, -1);
+		patch(skip);
+		return never;
+	}
+
+	private void compileExpression(TreeNode node) throws JiffyError {
+		switch (node.getKind()) {
+		case TreeNode.CALL:
+			compileCall(node, Opcodes.CALL);
+			break;
+		case TreeNode.STRING:
+			emit(Opcodes.CONSTANT, constant(node.getValue()));
+			break;
+		case TreeNode.IDENTIFIER:
+			emit(Opcodes.LOAD, node.getSlot());
+			break;
+		case TreeNode.NUMBER:
+			if (NumberValue.isExact(node.getValue().toDouble()))
+				emit(Opcodes.NUMBER, number(node.getValue().toDouble()));
+			else // e.g. an integer of 2^53 or more, which a double would round
+				emit(Opcodes.CONSTANT, constant(node.getValue()));
+			break;
+		default:
+			int op = Opcodes.arithmetic(node.getSymbol());
+			if (op < 0)
+				throw new JiffyError("Unexpected operator " + node.getSymbol());
+			compileExpression(node.getLeft());
+			compileExpression(node.getRight());
+			emit(op);
+		}
+	}
+
+	private void compileCall(TreeNode node, int op) throws JiffyError {
+		String funcName = node.getName();
+		Integer index = functionIndex.get(funcName);
+		if (index == null)
+			throw new JiffyError("Undefined function " + funcName);
+
+		List<TreeNode> params = node.getChildren();
+		for (TreeNode param : params)
+			compileExpression(param);
+		emit(op, index, params.size());
+	}
+
+	private int number(double d) {
+		int k = numbers.indexOf(d);
+		if (k < 0) {
+			k = numbers.size();
+			numbers.add(d);
+		}
+		return k;
+	}
+
+	private int constant(Value v) {
+		constants.add(v);
+		return constants.size() - 1;
+	}
+
+	private int emitJump(int op, int target) {
+		emit(op, 0);
+		int at = pc - 1;
+		if (target >= 0)
+			code[at] = target - pc;
+		return at;
+	}
+
+	private void patch(int at) {
+		// make the jump whose offset is at 'at' land on the current position
+		code[at] = pc - (at + 1);
+	}
+
+	private void emit(int op, int... operands) {
+		if (pc + 1 + operands.length > code.length)
+			code = Arrays.copyOf(code, code.length * 2);
+		code[pc++] = op;
+		for (int operand : operands)
+			code[pc++] = operand;
+
+		depth += stackEffect(op, operands);
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	private static int stackEffect(int op, int[] operands) {
+		switch (op) {
+		case Opcodes.NUMBER:
+		case Opcodes.CONSTANT:
+		case Opcodes.LOAD:
+			return 1;
+		case Opcodes.IF_NOT_LT:
+		case Opcodes.IF_NOT_GT:
+		case Opcodes.IF_NOT_EQ:
+			return -2;
+		case Opcodes.CALL:
+			return 1 - operands[1];
+		case Opcodes.TAIL_CALL:
+			return -operands[1];
+		case Opcodes.JUMP:
+		case Opcodes.READ:
+			return 0;
+		default: // STORE, arithmetic, RETURN, WRITE, POP
+			return -1;
+		}
+	}
+}
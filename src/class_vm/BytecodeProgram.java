@@ -0,0 +1,29 @@
+package class_vm;
+
+/**
+ * A compiled Jiffy program: its functions and the index of main.
+ */
+public class BytecodeProgram {
+	private final CompiledFunction[] functions;
+	private final int mainIndex;
+
+	public BytecodeProgram(CompiledFunction[] functions, int mainIndex) {
+		this.functions = functions;
+		this.mainIndex = mainIndex;
+	}
+
+	public CompiledFunction[] getFunctions() {
+		return functions;
+	}
+
+	public CompiledFunction getMain() {
+		return functions[mainIndex];
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (CompiledFunction f : functions)
+			sb.append(f).append('\n');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,80 @@
+package class_vm;
+
+import class_runtime.Value;
+
+/**
+ * The bytecode of one Jiffy function together with its constant pools.
+ */
+public class CompiledFunction {
+	private final String name;
+	private final int arity;
+	private final int frameSize;
+	private final int maxStack;
+	private final int[] code;
+	private final double[] numbers;
+	private final Value[] constants;
+
+	public CompiledFunction(String name, int arity, int frameSize, int maxStack, int[] code, double[] numbers,
+			Value[] constants) {
+		this.name = name;
+		this.arity = arity;
+		this.frameSize = frameSize;
+		this.maxStack = maxStack;
+		this.code = code;
+		this.numbers = numbers;
+		this.constants = constants;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getArity() {
+		return arity;
+	}
+
+	public int getFrameSize() {
+		// number of local variable slots, parameters included
+		return frameSize;
+	}
+
+	public int getMaxStack() {
+		// deepest operand stack the code can build above the locals
+		return maxStack;
+	}
+
+	public int[] getCode() {
+		return code;
+	}
+
+	public double[] getNumbers() {
+		return numbers;
+	}
+
+	public Value[] getConstants() {
+		return constants;
+	}
+
+	/**
+	 * Disassemble the function, one instruction per line.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("fun ").append(name).append(" arity=").append(arity).append(" locals=").append(frameSize)
+				.append(" stack=").append(maxStack).append('\n');
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			sb.append(String.format("%5d  %-10s", pc, Opcodes.names[op]));
+			for (int i = 1; i <= Opcodes.operandCounts[op]; i++)
+				sb.append(' ').append(code[pc + i]);
+			if (op == Opcodes.NUMBER)
+				sb.append("\t; ").append(numbers[code[pc + 1]]);
+			else if (op == Opcodes.CONSTANT)
+				sb.append("\t; \"").append(constants[code[pc + 1]]).append('"');
+			sb.append('\n');
+			pc += 1 + Opcodes.operandCounts[op];
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,68 @@
+package class_vm;
+
+/**
+ * Opcodes of the Jiffy bytecode. Every instruction is an opcode followed by
+ * a fixed number of int operands. Jump offsets are relative to the
+ * instruction that follows the jump.
+ */
+public class Opcodes {
+	public static final int NUMBER = 0; // NUMBER k: push numbers[k]
+	public static final int CONSTANT = 1; // CONSTANT k: push constants[k]
+	public static final int LOAD = 2; // LOAD slot: push the variable in slot
+	public static final int STORE = 3; // STORE slot: pop into the variable in slot
+	public static final int ADD = 4;
+	public static final int SUB = 5;
+	public static final int MUL = 6;
+	public static final int DIV = 7;
+	public static final int POW = 8;
+	public static final int MAX = 9;
+	public static final int MOD = 10;
+	public static final int JUMP = 11; // JUMP offset
+	public static final int IF_NOT_LT = 12; // IF_NOT_LT offset: pop right, left; jump unless left < right
+	public static final int IF_NOT_GT = 13; // IF_NOT_GT offset: pop right, left; jump unless left > right
+	public static final int IF_NOT_EQ = 14; // IF_NOT_EQ offset: pop right, left; jump unless left == right
+	public static final int CALL = 15; // CALL f argc: call functions[f] with the top argc values
+	public static final int RETURN = 16; // RETURN: pop the result and return it to the caller
+	public static final int WRITE = 17; // WRITE: pop a value and write it
+	public static final int READ = 18; // READ slot: read a line into the variable in slot
+	public static final int POP = 19; // POP: discard the top of the stack
+	public static final int TAIL_CALL = 20; // TAIL_CALL f argc: like CALL then RETURN, reusing the caller's frame
+
+	public static final String[] names = { "NUMBER", "CONSTANT", "LOAD", "STORE", "ADD", "SUB", "MUL", "DIV", "POW",
+			"MAX", "MOD", "JUMP", "IF_NOT_LT", "IF_NOT_GT", "IF_NOT_EQ", "CALL", "RETURN", "WRITE", "READ", "POP",
+			"TAIL_CALL" };
+
+	public static final int[] operandCounts = { 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 0, 0, 1, 0, 2 };
+
+	/**
+	 * Return the opcode of an arithmetic operator symbol, or -1 if the symbol is
+	 * not an arithmetic operator.
+	 */
+	public static int arithmetic(String symbol) {
+		switch (symbol) {
+		case "+":
+			return ADD;
+		case "-":
+			return SUB;
+		case "*":
+			return MUL;
+		case "/":
+			return DIV;
+		case "^":
+			return POW;
+		case "$":
+			return MAX;
+		case "%":
+			return MOD;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the operator character of an arithmetic opcode.
+	 */
+	public static char operator(int opcode) {
+		return "+-*/^$%".charAt(opcode - ADD);
+	}
+}
@@ -0,0 +1,450 @@
+package class_vm;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import class_helper.JiffyError;
+import class_helper.TreeNode;
+import class_interpreter.Linker;
+import class_optimizer.Optimizer;
+import class_parser.JiffyParser;
+import class_runtime.Arithmetic;
+import class_runtime.BufferedOutput;
+import class_runtime.InputSource;
+import class_runtime.LineInput;
+import class_runtime.NumberValue;
+import class_runtime.OutputSink;
+import class_runtime.StringValue;
+import class_runtime.Value;
+
+/**
+ * VirtualMachine executes a BytecodeProgram. It is an alternative to the
+ * tree-walking class_interpreter.Interpreter and produces the same output.
+ * 
+ * All activation records live on one stack: a call's locals start at its frame
+ * pointer and its operand stack sits right above them, so arguments pushed by
+ * the caller become the first locals of the callee without copying. The stack
+ * is split in two parallel arrays. Numbers that are exact as doubles (see
+ * NumberValue.isExact) are kept unboxed in nums with a null in refs; other
+ * numbers, such as integers of 2^53 or more, strings and None are kept in
+ * refs. Operators compute unboxed numbers in double arithmetic, and go through
+ * Arithmetic, which computes integers exactly, when an operand is boxed or the
+ * result is not exact.
+ */
+public class VirtualMachine {
+	private static final int INITIAL_STACK = 1024;
+	private static final int INITIAL_CALLS = 64;
+
+	/**
+	 * Marks a variable that has not been assigned yet.
+	 */
+	private static final Value UNDEFINED = new StringValue("undefined");
+
+	private Value[] refs = new Value[INITIAL_STACK];
+	private double[] nums = new double[INITIAL_STACK];
+
+	// Saved state of the callers, indexed by call depth
+	private CompiledFunction[] callFunctions = new CompiledFunction[INITIAL_CALLS];
+	private int[] callPcs = new int[INITIAL_CALLS];
+	private int[] callFps = new int[INITIAL_CALLS];
+
+	private InputSource input = LineInput.stdin();
+	private OutputSink output = BufferedOutput.stdout();
+
+	// Loop iterations and calls allowed before the run is abandoned
+	private long stepLimit = Long.MAX_VALUE;
+	private long steps;
+
+	/**
+	 * Parse, compile and run a program, in the manner of
+	 * class_interpreter.Interpreter.interpret.
+	 * 
+	 * @param programText the program to run
+	 * @param detail      if true, show the tokens and the bytecode
+	 */
+	public static void interpret(String programText, boolean detail) {
+		interpret(new StringReader(programText), detail);
+	}
+
+	/**
+	 * Run a program read from a Reader, such as FileProcessor.openProgramFile.
+	 */
+	public static void interpret(Reader in, boolean detail) {
+		interpret(new JiffyParser(in, detail), detail);
+	}
+
+	/**
+	 * Run a program that has been parsed already, e.g. by JiffyParser.parseFile.
+	 */
+	public static void interpret(JiffyParser jp, boolean detail) {
+		if (jp.getAST() == null) {
+			System.err.println("\t" + jp.getErrorMessage());
+			return;
+		}
+		HashMap<String, TreeNode> funcs = new Optimizer(jp.getAST()).getFuncs();
+		Linker.link(funcs);
+
+		BytecodeProgram program;
+		try {
+			program = BytecodeCompiler.compile(funcs);
+		} catch (JiffyError e) {
+			System.err.println("\t" + e.getMessage());
+			return;
+		}
+
+		if (detail)
+			System.out.println(program);
+		System.out.println("------------INTERPRETER OUTPUT------------------");
+
+		try {
+			new VirtualMachine().run(program);
+		} catch (JiffyError e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Limit the number of loop iterations and calls of the next runs. A run that
+	 * goes over the limit fails with a JiffyError.
+	 * 
+	 * @param stepLimit the number of steps allowed
+	 */
+	public void setStepLimit(long stepLimit) {
+		this.stepLimit = stepLimit;
+	}
+
+	/**
+	 * Run a program, starting with main.
+	 * 
+	 * @param program the compiled program
+	 * @return the value returned by main
+	 * @throws JiffyError if the program fails at run time
+	 */
+	public Value run(BytecodeProgram program) throws JiffyError {
+		try {
+			return execute(program, program.getMain(), new Value[0]);
+		} finally {
+			output.flush();
+		}
+	}
+
+	/**
+	 * Take the values of read statements from a source instead of standard
+	 * input.
+	 */
+	public void setInput(InputSource input) {
+		this.input = input;
+	}
+
+	/**
+	 * Send what write statements print to a sink instead of standard output.
+	 */
+	public void setOutput(OutputSink output) {
+		this.output = output;
+	}
+
+	/**
+	 * Call one function of a program.
+	 * 
+	 * @param program  the compiled program
+	 * @param funcName the function to call
+	 * @param args     the actual parameters
+	 * @return the value returned by the function
+	 * @throws JiffyError if the function does not exist or fails at run time
+	 */
+	public Value call(BytecodeProgram program, String funcName, Value[] args) throws JiffyError {
+		for (CompiledFunction f : program.getFunctions()) {
+			if (f.getName().equals(funcName)) {
+				if (args.length != f.getArity())
+					throw new JiffyError("Mismatched parameters for fun " + funcName + "()");
+				try {
+					return execute(program, f, args);
+				} finally {
+					output.flush();
+				}
+			}
+		}
+		throw new JiffyError("Undefined function " + funcName);
+	}
+
+	private Value execute(BytecodeProgram program, CompiledFunction fn, Value[] args) throws JiffyError {
+		CompiledFunction[] functions = program.getFunctions();
+		int[] code = fn.getCode();
+		double[] numbers = fn.getNumbers();
+		Value[] constants = fn.getConstants();
+
+		ensureStack(fn.getFrameSize() + fn.getMaxStack());
+		Value[] refs = this.refs;
+		double[] nums = this.nums;
+
+		int pc = 0;
+		int fp = 0;
+		int sp = fn.getFrameSize();
+		int calls = 0;
+		steps = 0;
+		Arrays.fill(refs, 0, sp, UNDEFINED);
+		for (int i = 0; i < args.length; i++)
+			set(i, args[i]);
+
+		while (true) {
+			switch (code[pc++]) {
+			case Opcodes.NUMBER:
+				refs[sp] = null;
+				nums[sp++] = numbers[code[pc++]];
+				break;
+			case Opcodes.CONSTANT:
+				set(sp++, constants[code[pc++]]);
+				break;
+			case Opcodes.LOAD: {
+				int slot = fp + code[pc++];
+				Value r = refs[slot];
+				if (r == UNDEFINED)
+					throw new JiffyError("Undefined variable in " + fn.getName());
+				refs[sp] = r;
+				nums[sp++] = nums[slot];
+				break;
+			}
+			case Opcodes.STORE: {
+				int slot = fp + code[pc++];
+				sp--;
+				refs[slot] = refs[sp];
+				nums[slot] = nums[sp];
+				break;
+			}
+			case Opcodes.ADD:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = nums[sp - 1] + nums[sp];
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				set(sp - 1, Arithmetic.add(get(sp - 1), get(sp)));
+				break;
+			case Opcodes.SUB:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = nums[sp - 1] - nums[sp];
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				slowArithmetic(Opcodes.SUB, sp);
+				break;
+			case Opcodes.MUL:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = nums[sp - 1] * nums[sp];
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				slowArithmetic(Opcodes.MUL, sp);
+				break;
+			case Opcodes.DIV:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = nums[sp - 1] / nums[sp];
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				slowArithmetic(Opcodes.DIV, sp);
+				break;
+			case Opcodes.POW:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = Math.pow(nums[sp - 1], nums[sp]);
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				slowArithmetic(Opcodes.POW, sp);
+				break;
+			case Opcodes.MAX:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					if (!(nums[sp - 1] > nums[sp]))
+						nums[sp - 1] = nums[sp];
+				} else
+					slowArithmetic(Opcodes.MAX, sp);
+				break;
+			case Opcodes.MOD:
+				sp--;
+				if (refs[sp] == null && refs[sp - 1] == null) {
+					double result = nums[sp - 1] % nums[sp];
+					if (NumberValue.isExact(result)) {
+						nums[sp - 1] = result;
+						break;
+					}
+				}
+				slowArithmetic(Opcodes.MOD, sp);
+				break;
+			case Opcodes.JUMP:
+				if (code[pc] < 0 && ++steps > stepLimit) // loop back edge
+					throw new JiffyError("Step limit exceeded");
+				pc += code[pc] + 1;
+				break;
+			case Opcodes.IF_NOT_LT:
+				sp -= 2;
+				if (refs[sp] == null && refs[sp + 1] == null ? nums[sp] < nums[sp + 1]
+						: Arithmetic.compare('<', get(sp), get(sp + 1)))
+					pc++;
+				else
+					pc += code[pc] + 1;
+				break;
+			case Opcodes.IF_NOT_GT:
+				sp -= 2;
+				if (refs[sp] == null && refs[sp + 1] == null ? nums[sp] > nums[sp + 1]
+						: Arithmetic.compare('>', get(sp), get(sp + 1)))
+					pc++;
+				else
+					pc += code[pc] + 1;
+				break;
+			case Opcodes.IF_NOT_EQ:
+				sp -= 2;
+				if (refs[sp] == null && refs[sp + 1] == null ? nums[sp] == nums[sp + 1]
+						: Arithmetic.compare('?', get(sp), get(sp + 1)))
+					pc++;
+				else
+					pc += code[pc] + 1;
+				break;
+			case Opcodes.CALL: {
+				CompiledFunction callee = functions[code[pc++]];
+				int argc = code[pc++];
+				if (argc != callee.getArity())
+					throw new JiffyError("Mismatched parameters for fun " + callee.getName() + "()");
+				if (++steps > stepLimit)
+					throw new JiffyError("Step limit exceeded");
+
+				if (calls == callFunctions.length)
+					growCalls();
+				callFunctions[calls] = fn;
+				callPcs[calls] = pc;
+				callFps[calls] = fp;
+				calls++;
+
+				fp = sp - argc;
+				sp = fp + callee.getFrameSize();
+				if (sp + callee.getMaxStack() > refs.length) {
+					ensureStack(sp + callee.getMaxStack());
+					refs = this.refs;
+					nums = this.nums;
+				}
+				Arrays.fill(refs, fp + argc, sp, UNDEFINED);
+
+				fn = callee;
+				code = fn.getCode();
+				numbers = fn.getNumbers();
+				constants = fn.getConstants();
+				pc = 0;
+				break;
+			}
+			case Opcodes.TAIL_CALL: {
+				CompiledFunction callee = functions[code[pc++]];
+				int argc = code[pc++];
+				if (argc != callee.getArity())
+					throw new JiffyError("Mismatched parameters for fun " + callee.getName() + "()");
+				if (++steps > stepLimit)
+					throw new JiffyError("Step limit exceeded");
+
+				// The arguments replace the caller's frame and the callee returns
+				// straight to the caller's caller, so the call stack does not grow
+				System.arraycopy(refs, sp - argc, refs, fp, argc);
+				System.arraycopy(nums, sp - argc, nums, fp, argc);
+				sp = fp + callee.getFrameSize();
+				if (sp + callee.getMaxStack() > refs.length) {
+					ensureStack(sp + callee.getMaxStack());
+					refs = this.refs;
+					nums = this.nums;
+				}
+				Arrays.fill(refs, fp + argc, sp, UNDEFINED);
+
+				fn = callee;
+				code = fn.getCode();
+				numbers = fn.getNumbers();
+				constants = fn.getConstants();
+				pc = 0;
+				break;
+			}
+			case Opcodes.RETURN: {
+				Value r = refs[sp - 1];
+				double n = nums[sp - 1];
+				if (calls == 0)
+					return r == null ? NumberValue.of(n) : r;
+
+				// The result replaces the callee's frame on the caller's stack
+				calls--;
+				sp = fp;
+				refs[sp] = r;
+				nums[sp++] = n;
+				fn = callFunctions[calls];
+				callFunctions[calls] = null;
+				pc = callPcs[calls];
+				fp = callFps[calls];
+				code = fn.getCode();
+				numbers = fn.getNumbers();
+				constants = fn.getConstants();
+				break;
+			}
+			case Opcodes.WRITE:
+				sp--;
+				output.println(refs[sp] == null ? NumberValue.format(nums[sp]) : refs[sp].toString());
+				break;
+			case Opcodes.READ:
+				if (input == LineInput.stdin())
+					output.flush();
+				Value value = input.next();
+				if (value == null)
+					throw new JiffyError("No more input for read in " + fn.getName());
+				set(fp + code[pc++], value);
+				break;
+			case Opcodes.POP:
+				sp--;
+				break;
+			default:
+				throw new JiffyError("Bad opcode " + code[pc - 1] + " in " + fn.getName());
+			}
+		}
+	}
+
+	private Value get(int i) {
+		Value r = refs[i];
+		return r == null ? NumberValue.of(nums[i]) : r;
+	}
+
+	private void set(int i, Value v) {
+		if (v.isNumber() && NumberValue.isExact(v.toDouble())) {
+			refs[i] = null;
+			nums[i] = v.toDouble();
+		} else
+			refs[i] = v;
+	}
+
+	private void slowArithmetic(int op, int sp) {
+		// An operand is boxed or the result is not exact as a double
+		set(sp - 1, Arithmetic.apply(Opcodes.operator(op), get(sp - 1), get(sp)));
+	}
+
+	private void ensureStack(int size) {
+		if (size > refs.length) {
+			int length = Math.max(refs.length * 2, size);
+			refs = Arrays.copyOf(refs, length);
+			nums = Arrays.copyOf(nums, length);
+		}
+	}
+
+	private void growCalls() {
+		int length = callFunctions.length * 2;
+		callFunctions = Arrays.copyOf(callFunctions, length);
+		callPcs = Arrays.copyOf(callPcs, length);
+		callFps = Arrays.copyOf(callFps, length);
+	}
+}